@@ -0,0 +1,96 @@
+package it.json2csv;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.JsonValue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of each conversion phase on its own, and of the whole conversion.
+ * Each phase starts from the result of the previous one, computed once at setup.
+ *
+ * Run with: mvn -P jmh test-compile exec:exec
+ * (allocation rate is reported by the GC profiler, see jmh.args in pom.xml)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConversionBenchmark {
+
+    @Param
+    public Dataset dataset;
+
+    private String inputFile;
+    private Options options;
+    private JsonUtil jsonUtil;
+
+    private JsonValue data;
+    private List<LinkedHashMap<String, Object>> rows;
+    private List<String> columns;
+    private List<Object[]> arrays;
+
+    @Setup
+    public void setup() throws IOException {
+        inputFile = dataset.createFile().getAbsolutePath();
+        File output = File.createTempFile("bench-", ".csv");
+        output.deleteOnExit();
+        options = new Options();
+        options.setOutput(output.getAbsolutePath());
+        options.setFiles(List.of(inputFile));
+        jsonUtil = new JsonUtil();
+
+        data = jsonUtil.jsonFromFile(inputFile);
+        rows = new Converter(options).json2list(data);
+        columns = new ArrayList<>();
+        arrays = new ArrayList<>();
+        new Converter(options).arrangeData(rows, columns, arrays);
+    }
+
+    @Benchmark
+    public JsonValue jsonFromFile() throws IOException {
+        return jsonUtil.jsonFromFile(inputFile);
+    }
+
+    @Benchmark
+    public List<LinkedHashMap<String, Object>> json2list() {
+        return new Converter(options).json2list(data);
+    }
+
+    @Benchmark
+    public List<Object[]> arrangeData() {
+        List<Object[]> result = new ArrayList<>(rows.size());
+        new Converter(options).arrangeData(rows, new ArrayList<>(), result);
+        return result;
+    }
+
+    @Benchmark
+    public void printCSV() throws IOException {
+        new Printer(options).printCSV(arrays, columns);
+    }
+
+    @Benchmark
+    public int endToEnd() {
+        Converter converter = new Converter(options);
+        converter.run();
+        return converter.getRc();
+    }
+}
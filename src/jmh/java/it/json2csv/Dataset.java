@@ -0,0 +1,119 @@
+package it.json2csv;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+
+/**
+ * Synthetic JSON documents for benchmarks. Each document is a root array of records, with
+ * a fixed seed, so that every run converts exactly the same data.
+ */
+public enum Dataset {
+
+    /** many scalar attributes per record, one row per record */
+    WIDE {
+        @Override
+        void writeRecord(JsonGenerator generator, int index, Random random) {
+            generator.writeStartObject();
+            for (int i = 0; i < 200; ++i) {
+                if (i % 2 == 0) {
+                    generator.write("field" + i, "value " + random.nextInt(1000));
+                } else {
+                    generator.write("field" + i, random.nextInt());
+                }
+            }
+            generator.writeEnd();
+        }
+    },
+
+    /** objects nested many levels deep, long column names */
+    DEEP {
+        @Override
+        void writeRecord(JsonGenerator generator, int index, Random random) {
+            generator.writeStartObject();
+            generator.write("id", index);
+            for (int i = 0; i < 30; ++i) {
+                generator.writeStartObject("level" + i);
+                generator.write("name", "node " + i);
+                generator.write("value", random.nextInt(100));
+            }
+            for (int i = 0; i < 30; ++i) {
+                generator.writeEnd();
+            }
+            generator.writeEnd();
+        }
+    },
+
+    /** several sibling arrays, so that FULL JOIN produces many rows per record */
+    ARRAYS {
+        @Override
+        void writeRecord(JsonGenerator generator, int index, Random random) {
+            generator.writeStartObject();
+            generator.write("id", index);
+            for (int a = 0; a < 3; ++a) {
+                generator.writeStartArray("list" + a);
+                for (int i = 0; i < 6; ++i) {
+                    generator.writeStartObject();
+                    generator.write("code", "c" + random.nextInt(100));
+                    generator.write("amount", random.nextInt(1000));
+                    generator.writeEnd();
+                }
+                generator.writeEnd();
+            }
+            generator.writeEnd();
+        }
+
+        @Override
+        int records() {
+            return 200;
+        }
+    },
+
+    /** integers and decimals only */
+    NUMBERS {
+        @Override
+        void writeRecord(JsonGenerator generator, int index, Random random) {
+            generator.writeStartObject();
+            for (int i = 0; i < 50; ++i) {
+                if (i % 2 == 0) {
+                    generator.write("n" + i, random.nextLong());
+                } else {
+                    generator.write("n" + i, random.nextDouble() * 1000000);
+                }
+            }
+            generator.writeEnd();
+        }
+    };
+
+    abstract void writeRecord(JsonGenerator generator, int index, Random random);
+
+    /**
+     * @return number of elements of the root array
+     */
+    int records() {
+        return 1000;
+    }
+
+    /**
+     * Write this dataset into a temporary file, deleted on exit
+     */
+    File createFile() throws IOException {
+        File file = File.createTempFile("bench-" + name().toLowerCase() + "-", ".json");
+        file.deleteOnExit();
+        Random random = new Random(42);
+        try (OutputStream out = new FileOutputStream(file);
+                JsonGenerator generator = Json.createGenerator(out)) {
+            generator.writeStartArray();
+            for (int i = 0; i < records(); ++i) {
+                writeRecord(generator, i, random);
+            }
+            generator.writeEnd();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,123 @@
+package it.json2csv;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Removal of a node deep inside a document, with a path compiled once into JsonPath,
+ * against splitting the path at each call and copying the identifiers at each level,
+ * as before JsonPath.
+ *
+ * Run with: mvn -P jmh test-compile exec:exec -Djmh.args="-prof gc JsonPathBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonPathBenchmark {
+
+    @Param({ "50", "200", "800" })
+    public int depth;
+
+    private final JsonUtil util = new JsonUtil();
+    private JsonValue document;
+    private String text;
+    private JsonPath path;
+
+    @Setup
+    public void setup() {
+        document = deepDocument(depth);
+        text = deepPath(depth);
+        path = JsonPath.parse(text);
+        if (!removeNodeByCopy(document, util.extractIdentifiers(text)).equals(util.removeNode(document, path))) {
+            throw new IllegalStateException("Different results at depth " + depth);
+        }
+    }
+
+    @Benchmark
+    public JsonValue copiedIdentifiers() {
+        return removeNodeByCopy(document, new LinkedList<>(util.extractIdentifiers(text)));
+    }
+
+    @Benchmark
+    public JsonValue compiledPath() {
+        return util.removeNode(document, path);
+    }
+
+    /**
+     * {"a":{"a":...{"a":{"x":1,"y":2}}}} with given depth
+     */
+    static JsonValue deepDocument(int depth) {
+        JsonValue value = Json.createObjectBuilder().add("x", 1).add("y", 2).build();
+        for (int i = 0; i < depth; ++i) {
+            value = Json.createObjectBuilder().add("a", value).add("b", i).build();
+        }
+        return value;
+    }
+
+    static String deepPath(int depth) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; ++i) {
+            sb.append("a/");
+        }
+        return sb.append("x").toString();
+    }
+
+    /**
+     * removeNode() as it was before JsonPath: the path is split at each call, and the list
+     * of identifiers is copied at each level
+     */
+    static JsonValue removeNodeByCopy(JsonValue value, List<String> nodePath) {
+        if (nodePath.size() < 1) {
+            return value;
+        }
+        if (value instanceof JsonObject) {
+            JsonObjectBuilder builder = Json.createObjectBuilder();
+            for (Entry<String, JsonValue> entry : ((JsonObject) value).entrySet()) {
+                if (!entry.getKey().equals(nodePath.get(0))) {
+                    builder.add(entry.getKey(), entry.getValue());
+                } else if (nodePath.size() > 1) {
+                    List<String> morePaths = new LinkedList<>(nodePath);
+                    morePaths.remove(0);
+                    builder.add(entry.getKey(), removeNodeByCopy(entry.getValue(), morePaths));
+                }
+            }
+            return builder.build();
+        }
+        JsonArrayBuilder builder = Json.createArrayBuilder();
+        int index = Integer.valueOf(nodePath.get(0));
+        for (int i = 0; i < ((JsonArray) value).size(); ++i) {
+            if (i != index) {
+                builder.add(((JsonArray) value).get(i));
+            } else if (nodePath.size() > 1) {
+                List<String> morePaths = new LinkedList<>(nodePath);
+                morePaths.remove(0);
+                builder.add(removeNodeByCopy(((JsonArray) value).get(i), morePaths));
+            }
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,65 @@
+package it.json2csv;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assign a fixed index to each column, in order of appearance.
+ * This class is not thread safe.
+ */
+public class ColumnIndex {
+
+    private final Map<String, Integer> columnIndexes = new HashMap<>();
+    private final List<String> columns = new ArrayList<>();
+    private boolean fixed = false;
+
+    /**
+     * Constructor. Columns will be registered as they are seen.
+     */
+    public ColumnIndex() {
+    }
+
+    /**
+     * Constructor. Use a fixed list of columns: further columns will not be registered.
+     */
+    public ColumnIndex(List<String> fixedColumns) {
+        columns.addAll(fixedColumns);
+        for (int i = 0; i < fixedColumns.size(); ++i) {
+            columnIndexes.put(fixedColumns.get(i), i);
+        }
+        fixed = true;
+    }
+
+    /**
+     * @return index of given column, registering it if it was never seen before;
+     * -1 if the column is unknown and columns are fixed
+     */
+    public int indexOf(String column) {
+        Integer index = columnIndexes.get(column);
+        if (index == null) {
+            if (fixed) {
+                return -1;
+            }
+            index = columns.size();
+            columns.add(column);
+            columnIndexes.put(column, index);
+        }
+        return index;
+    }
+
+    /**
+     * @return number of columns
+     */
+    public int size() {
+        return columns.size();
+    }
+
+    /**
+     * @return all columns, in order of registration
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+}
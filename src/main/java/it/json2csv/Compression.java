@@ -0,0 +1,120 @@
+package it.json2csv;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import it.json2csv.Options.CompressionFormat;
+
+/**
+ * Detection of compressed input, and creation of compressing output streams.
+ *
+ * Compressed input is recognized by its first bytes: gzip magic number, or a valid
+ * zlib header. No JSON text can start with these bytes.
+ */
+public class Compression {
+
+    private static final int GZIP_MAGIC_0 = 0x1f;
+    private static final int GZIP_MAGIC_1 = 0x8b;
+    private static final int ZLIB_CMF = 0x78;
+
+    private Compression() {
+    }
+
+    /**
+     * @return GZIP, DEFLATE, or NONE, according to the first 2 bytes of a stream
+     *         (-1 if missing)
+     */
+    static CompressionFormat detect(int b0, int b1) {
+        if (b0 == GZIP_MAGIC_0 && b1 == GZIP_MAGIC_1) {
+            return CompressionFormat.GZIP;
+        }
+        // zlib: method deflate with 32K window (smaller windows would start with a digit),
+        // and header checksum
+        if (b0 == ZLIB_CMF && b1 >= 0 && ((b0 << 8) | b1) % 31 == 0) {
+            return CompressionFormat.DEFLATE;
+        }
+        return CompressionFormat.NONE;
+    }
+
+    /**
+     * @return compression format of given file
+     */
+    public static CompressionFormat detect(String fileName) throws IOException {
+        try (InputStream in = new FileInputStream(fileName)) {
+            int b0 = in.read();
+            return detect(b0, b0 < 0 ? -1 : in.read());
+        }
+    }
+
+    /**
+     * @return given stream, decompressed if it starts with a gzip or zlib header. The
+     *         returned stream is buffered.
+     */
+    public static InputStream decompress(InputStream in, int bufferSize) throws IOException {
+        InputStream buffered = in.markSupported() ? in : new BufferedInputStream(in, bufferSize);
+        buffered.mark(2);
+        int b0 = buffered.read();
+        int b1 = b0 < 0 ? -1 : buffered.read();
+        buffered.reset();
+        switch (detect(b0, b1)) {
+            case GZIP:
+                // concatenated members are read as a single stream
+                return new BufferedInputStream(new GZIPInputStream(buffered, bufferSize), bufferSize);
+            case DEFLATE:
+                return new BufferedInputStream(new InflaterInputStream(buffered), bufferSize);
+            default:
+                return buffered;
+        }
+    }
+
+    /**
+     * @throws IOException if level is not a valid Deflater level
+     */
+    static void checkLevel(int level) throws IOException {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+            throw new IOException("Invalid compression level " + level);
+        }
+    }
+
+    /**
+     * @return given stream, compressed as requested. Closing the returned stream closes
+     *         the given one. With more than one thread, blocks are compressed in parallel.
+     */
+    public static OutputStream compress(OutputStream out, CompressionFormat format, int level, int bufferSize,
+            int threads) throws IOException {
+        if (format == null || format == CompressionFormat.NONE) {
+            return out;
+        }
+        checkLevel(level);
+        if (threads > 1) {
+            return new ParallelDeflaterOutputStream(out, format, level, threads);
+        }
+        int size = Math.max(bufferSize, 512);
+        if (format == CompressionFormat.GZIP) {
+            return new GZIPOutputStream(out, size) {
+                {
+                    def.setLevel(level);
+                }
+            };
+        }
+        Deflater deflater = new Deflater(level);
+        return new DeflaterOutputStream(out, deflater, size) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,37 @@
+package it.json2csv;
+
+/**
+ * Receives notifications about a run of Converter, e.g. to feed a monitoring system.
+ * Register with Converter.addListener().
+ *
+ * progress() is called from a timer thread, other methods from the thread calling
+ * Converter.run(), so implementations must be thread safe. They must also return quickly,
+ * as the conversion does not proceed until they do.
+ */
+public interface ConversionListener {
+
+    /**
+     * Conversion started; given object is updated live until the end of the run
+     */
+    default void started(ConversionProgress progress) {
+    }
+
+    /**
+     * Called periodically while conversion runs, see Converter.setProgressInterval()
+     */
+    default void progress(ConversionProgress progress) {
+    }
+
+    /**
+     * Given input file was read and flattened, or could not be read. Rows may still be
+     * waiting to be printed, unless in --stream mode.
+     */
+    default void fileFinished(String fileName, ConversionProgress progress) {
+    }
+
+    /**
+     * Conversion finished, see ConversionProgress.getRc()
+     */
+    default void finished(ConversionProgress progress) {
+    }
+}
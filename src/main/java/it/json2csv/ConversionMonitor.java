@@ -0,0 +1,165 @@
+package it.json2csv;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Expose live counters of a Converter via JMX, under the name
+ * it.json2csv:type=Converter,name=&lt;name&gt;. Usage:
+ *
+ * <pre>
+ * ConversionMonitor monitor = ConversionMonitor.register(converter, "nightly");
+ * try {
+ *     converter.run();
+ * } finally {
+ *     monitor.unregister();
+ * }
+ * </pre>
+ *
+ * The same Converter may run many times; counters always refer to the last run.
+ * This class is thread safe.
+ */
+public class ConversionMonitor implements ConversionMonitorMBean, ConversionListener {
+
+    private final Converter converter;
+    private final ObjectName objectName;
+
+    private volatile ConversionProgress progress;
+    private long lastBytes;
+    private long lastRows;
+    private volatile long lastChangeNanos = System.nanoTime();
+
+    ConversionMonitor(Converter converter, ObjectName objectName) {
+        this.converter = converter;
+        this.objectName = objectName;
+    }
+
+    /**
+     * Register a new monitor of given Converter on the platform MBeanServer
+     *
+     * @param name distinguishes converters running in the same JVM
+     */
+    public static ConversionMonitor register(Converter converter, String name) throws JMException {
+        ObjectName objectName = new ObjectName("it.json2csv:type=Converter,name=" + ObjectName.quote(name));
+        ConversionMonitor monitor = new ConversionMonitor(converter, objectName);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(monitor, objectName);
+        converter.addListener(monitor);
+        return monitor;
+    }
+
+    /**
+     * Stop monitoring, and remove this monitor from the MBeanServer
+     */
+    public void unregister() throws JMException {
+        converter.removeListener(this);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+    }
+
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    @Override
+    public void started(ConversionProgress progress) {
+        synchronized (this) {
+            lastBytes = 0;
+            lastRows = 0;
+        }
+        lastChangeNanos = System.nanoTime();
+        this.progress = progress;
+    }
+
+    @Override
+    public synchronized void progress(ConversionProgress progress) {
+        long bytes = progress.getBytesRead();
+        long rows = progress.getRowsWritten();
+        if (bytes != lastBytes || rows != lastRows) {
+            lastBytes = bytes;
+            lastRows = rows;
+            lastChangeNanos = System.nanoTime();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        ConversionProgress p = progress;
+        return p != null && p.isRunning();
+    }
+
+    @Override
+    public int getFilesTotal() {
+        ConversionProgress p = progress;
+        return p == null ? 0 : p.getFilesTotal();
+    }
+
+    @Override
+    public int getFilesDone() {
+        ConversionProgress p = progress;
+        return p == null ? 0 : p.getFilesDone();
+    }
+
+    @Override
+    public long getBytesTotal() {
+        ConversionProgress p = progress;
+        return p == null ? 0 : p.getBytesTotal();
+    }
+
+    @Override
+    public long getBytesRead() {
+        ConversionProgress p = progress;
+        return p == null ? 0 : p.getBytesRead();
+    }
+
+    @Override
+    public long getRecords() {
+        ConversionProgress p = progress;
+        return p == null ? 0 : p.getRecords();
+    }
+
+    @Override
+    public long getRowsWritten() {
+        ConversionProgress p = progress;
+        return p == null ? 0 : p.getRowsWritten();
+    }
+
+    @Override
+    public long getElapsedMillis() {
+        ConversionProgress p = progress;
+        return p == null ? 0 : p.getElapsedMillis();
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        ConversionProgress p = progress;
+        return p == null ? 0 : p.getBytesPerSecond();
+    }
+
+    @Override
+    public double getRowsPerSecond() {
+        ConversionProgress p = progress;
+        return p == null ? 0 : p.getRowsPerSecond();
+    }
+
+    @Override
+    public long getEtaMillis() {
+        ConversionProgress p = progress;
+        return p == null ? -1 : p.getEtaMillis();
+    }
+
+    @Override
+    public long getIdleMillis() {
+        return isRunning() ? (System.nanoTime() - lastChangeNanos) / 1000000 : 0;
+    }
+
+    @Override
+    public int getRc() {
+        ConversionProgress p = progress;
+        return p == null ? 0 : p.getRc();
+    }
+}
@@ -0,0 +1,37 @@
+package it.json2csv;
+
+/**
+ * JMX view of the progress of a Converter, see ConversionMonitor
+ */
+public interface ConversionMonitorMBean {
+
+    boolean isRunning();
+
+    int getFilesTotal();
+
+    int getFilesDone();
+
+    long getBytesTotal();
+
+    long getBytesRead();
+
+    long getRecords();
+
+    long getRowsWritten();
+
+    long getElapsedMillis();
+
+    double getBytesPerSecond();
+
+    double getRowsPerSecond();
+
+    long getEtaMillis();
+
+    /**
+     * @return milliseconds since bytes read or rows written last changed, as seen by the
+     *         periodic progress notifications; a growing value means a stalled conversion
+     */
+    long getIdleMillis();
+
+    int getRc();
+}
@@ -0,0 +1,138 @@
+package it.json2csv;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Live counters of a run of Converter: files done, bytes consumed, rows written,
+ * throughput and estimated time to completion.
+ *
+ * Bytes are counted as they are read from input files, i.e. before decompression, so that
+ * they can be compared with the size of files. Input read twice (--header-discovery SCAN)
+ * is counted twice. The total size is unknown when reading from stdin.
+ * This class is thread safe.
+ */
+public class ConversionProgress {
+
+    private final int filesTotal;
+    private final long bytesTotal;
+    private final RunStats stats;
+    private final AtomicInteger filesDone = new AtomicInteger();
+    private final long startNanos = System.nanoTime();
+    private volatile long endNanos = -1;
+    private volatile int rc;
+
+    /**
+     * Constructor
+     *
+     * @param files input files
+     * @param stats counters of bytes, records and rows of the run
+     */
+    public ConversionProgress(List<String> files, RunStats stats) {
+        this.filesTotal = files.size();
+        this.stats = stats;
+        long total = 0;
+        for (String file : files) {
+            if (JsonUtil.isStdin(file)) {
+                total = -1;
+                break;
+            }
+            total += new File(file).length();
+        }
+        this.bytesTotal = total;
+    }
+
+    void fileDone() {
+        filesDone.incrementAndGet();
+    }
+
+    void finish(int rc) {
+        this.rc = rc;
+        this.endNanos = System.nanoTime();
+    }
+
+    public boolean isRunning() {
+        return endNanos < 0;
+    }
+
+    /**
+     * @return return code of the run, as Converter.getRc(); meaningful only when the run is over
+     */
+    public int getRc() {
+        return rc;
+    }
+
+    public int getFilesTotal() {
+        return filesTotal;
+    }
+
+    public int getFilesDone() {
+        return filesDone.get();
+    }
+
+    /**
+     * @return total size of input files, or -1 if unknown
+     */
+    public long getBytesTotal() {
+        return bytesTotal;
+    }
+
+    public long getBytesRead() {
+        return stats.getBytesRead();
+    }
+
+    /**
+     * @return records flattened so far, i.e. root nodes or elements of root arrays
+     */
+    public long getRecords() {
+        return stats.getRecords();
+    }
+
+    public long getRowsWritten() {
+        return stats.getRows();
+    }
+
+    public long getElapsedMillis() {
+        long end = endNanos;
+        return ((end < 0 ? System.nanoTime() : end) - startNanos) / 1000000;
+    }
+
+    /**
+     * @return average bytes read per second since start
+     */
+    public double getBytesPerSecond() {
+        long elapsed = getElapsedMillis();
+        return elapsed == 0 ? 0 : getBytesRead() * 1000.0 / elapsed;
+    }
+
+    /**
+     * @return average rows written per second since start
+     */
+    public double getRowsPerSecond() {
+        long elapsed = getElapsedMillis();
+        return elapsed == 0 ? 0 : getRowsWritten() * 1000.0 / elapsed;
+    }
+
+    /**
+     * @return estimated time to completion, based on bytes still to be read and on average
+     *         throughput, or, once input is read and buffered rows are being printed, on rows
+     *         still to be printed; 0 if the run is over, -1 if unknown
+     */
+    public long getEtaMillis() {
+        if (!isRunning()) {
+            return 0;
+        }
+        long toPrint = stats.getRowsToPrint();
+        if (toPrint >= 0) {
+            long printed = stats.getRowsPrinted();
+            return printed == 0 ? -1 : (long) (toPrint * (double) stats.getPrintMillis() / printed);
+        }
+        long read = getBytesRead();
+        if (bytesTotal < 0 || read == 0) {
+            return -1;
+        }
+        long remaining = Math.max(0, bytesTotal - read);
+        return (long) (remaining * (double) getElapsedMillis() / read);
+    }
+}
@@ -1,51 +1,325 @@
 package it.json2csv;
 
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.StreamSupport;
 
 import javax.json.JsonArray;
+import javax.json.JsonException;
 import javax.json.JsonNumber;
 import javax.json.JsonObject;
 import javax.json.JsonString;
 import javax.json.JsonValue;
 
+import org.apache.commons.io.IOUtils;
+
+import com.beust.jcommander.ParameterException;
+
+import it.json2csv.Options.HeaderDiscovery;
+import it.json2csv.Options.RowLimitPolicy;
+import it.json2csv.RunStats.Phase;
+
 public class Converter implements Runnable {
 
+	/**
+	 * Number of elements of the root array flattened by a single task, when --threads is given
+	 */
+	static final int PARALLEL_CHUNK_SIZE = 256;
+
+	/**
+	 * Number of ranges per thread a JSON Lines file is split into, when --threads is given,
+	 * so that work is balanced even if some ranges are slower
+	 */
+	static final int RANGES_PER_THREAD = 4;
+
+	/**
+	 * Number of tasks per thread submitted ahead of the one being collected, when --threads
+	 * is given: rows of finished tasks are held until collected, so this bounds memory
+	 */
+	static final int TASKS_PER_THREAD = 2;
+
 	Options options;
 	int rc = 0;
 	JsonUtil jsonUtil = new JsonUtil();
+	FlatteningPlan plan;
+	PathTransform pathTransform;
+	JsonPruner pruner;
+	RunStats stats = RunStats.DISABLED;
+
+	/**
+	 * Default interval between two calls of ConversionListener.progress(), in milliseconds
+	 */
+	static final long DEFAULT_PROGRESS_INTERVAL = 1000;
+
+	/**
+	 * Interval between two samples of heap usage for --stats, in milliseconds
+	 */
+	static final long HEAP_SAMPLE_INTERVAL = 100;
+
+	final List<ConversionListener> listeners = new CopyOnWriteArrayList<>();
+	long progressInterval = DEFAULT_PROGRESS_INTERVAL;
+	volatile ConversionProgress progress;
+
+	// state of streaming mode
+	ColumnIndex streamColumns;
+	Set<String> ignoredColumns;
+
+	ForkJoinPool pool;
+
+	/**
+	 * Input files, streaming mode and header discovery of the current run, which differ
+	 * from options when reading stdin, see handleStdin(); null outside run()
+	 */
+	List<String> runFiles;
+	Boolean runStream;
+	HeaderDiscovery runHeaderDiscovery;
+
+	/**
+	 * Rows sent to output so far, for --max-total-rows
+	 */
+	long totalRows = 0;
+
+	/**
+	 * Set when --max-total-rows drops a row: further input is not read, as all of its rows
+	 * would be dropped too
+	 */
+	volatile boolean limitReached;
 
 	public Converter(Options options) {
 		this.options = options;
+		this.plan = new FlatteningPlan(options);
 	}
 
 	public int getRc() {
 		return rc;
 	}
 
+	/**
+	 * Register a listener, notified of the progress of each following run()
+	 */
+	public void addListener(ConversionListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(ConversionListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * @return progress of the current (or last) run, or null if never run. Counters are
+	 *         updated only if some listener is registered, or statistics are enabled.
+	 */
+	public ConversionProgress getProgress() {
+		return progress;
+	}
+
+	public long getProgressInterval() {
+		return progressInterval;
+	}
+
+	/**
+	 * @param progressInterval milliseconds between two calls of ConversionListener.progress()
+	 */
+	public void setProgressInterval(long progressInterval) {
+		this.progressInterval = progressInterval;
+	}
+
 	/**
 	 * Entry point
 	 */
 	@Override
 	public void run() {
+		try {
+			Options.checkThreads(options.getThreads());
+		} catch (ParameterException e) {
+			// same as a bad command line
+			System.err.println("Error: " + e.getMessage());
+			rc = -1;
+			return;
+		}
 		handleIsUnixOption();
-	
-		// Read all JSON files and transform into a single list of maps
-		List<LinkedHashMap<String, Object>> dataAsListOfMaps = readData();
+		handleStdin();
+		jsonUtil.setMemoryMapped(options.isMmap());
+		totalRows = 0;
+		limitReached = false;
+		ProgressPrinter progressPrinter = null;
+		if (options.isProgress()) {
+			progressPrinter = new ProgressPrinter(System.err, System.console() != null);
+			addListener(progressPrinter);
+		}
+		if (options.isStats() || options.getStatsFile() != null) {
+			stats = new RunStats();
+		} else {
+			// listeners only need counters
+			stats = listeners.isEmpty() ? RunStats.DISABLED : new RunStats(false);
+		}
+		jsonUtil.setStats(stats);
+		progress = new ConversionProgress(getFiles(), stats);
+		stats.begin();
+		ScheduledExecutorService ticker = startProgress();
+		// compiled here, before any task can use them
+		pathTransform = null;
+		pruner = null;
+		getPruner();
+
+		try {
+			if (isStream()) {
+				runStreaming();
+				return;
+			}
+
+			// Read all JSON files, transform into rows, and arrange each row into a compact buffer
+			ColumnIndex columnIndex = options.getOutputColumns() == null || options.getOutputColumns().isEmpty()
+					? new ColumnIndex() : new ColumnIndex(options.getOutputColumns());
+			RowBuffer buffer = new RowBuffer(options.getNumberFormatter());
+			readData(row -> buffer.addRow(toArray(row, columnIndex)));
+
+			// print to CSV
+			print(columnIndex.getColumns(), buffer);
+		} catch (RowLimitException e) {
+			System.err.println("Error: " + e.getMessage());
+			rc = 3;
+		} finally {
+			if (pool != null) {
+				pool.shutdown();
+				pool = null;
+			}
+			stats.end();
+			progress.finish(rc);
+			stopProgress(ticker);
+			if (progressPrinter != null) {
+				removeListener(progressPrinter);
+			}
+			reportStats();
+			// counters of this run stay in progress; later convert() calls do not touch them
+			stats = RunStats.DISABLED;
+			jsonUtil.setStats(stats);
+			runFiles = null;
+			runStream = null;
+			runHeaderDiscovery = null;
+		}
+	}
+
+	/**
+	 * Notify listeners that run started, and schedule periodic notifications, and samples
+	 * of heap usage for --stats
+	 *
+	 * @return the timer of periodic tasks, or null if there are no listeners and no --stats
+	 */
+	private ScheduledExecutorService startProgress() {
+		if (listeners.isEmpty() && !stats.isTimed()) {
+			return null;
+		}
+		for (ConversionListener listener : listeners) {
+			listener.started(progress);
+		}
+		ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "json2csv-progress");
+			thread.setDaemon(true);
+			return thread;
+		});
+		if (stats.isTimed()) {
+			ticker.scheduleAtFixedRate(stats::sampleHeap, HEAP_SAMPLE_INTERVAL, HEAP_SAMPLE_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+		if (listeners.isEmpty()) {
+			return ticker;
+		}
+		ConversionProgress current = progress;
+		ticker.scheduleAtFixedRate(() -> {
+			for (ConversionListener listener : listeners) {
+				try {
+					listener.progress(current);
+				} catch (RuntimeException e) {
+					// an exception would stop further notifications
+					System.err.println("Warning! Error in progress listener: " + e);
+				}
+			}
+		}, progressInterval, progressInterval, TimeUnit.MILLISECONDS);
+		return ticker;
+	}
+
+	/**
+	 * Stop periodic notifications, then notify listeners that run finished
+	 */
+	private void stopProgress(ScheduledExecutorService ticker) {
+		if (ticker == null) {
+			return;
+		}
+		ticker.shutdownNow();
+		try {
+			ticker.awaitTermination(progressInterval, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (ConversionListener listener : listeners) {
+			listener.finished(progress);
+		}
+	}
 
-		// convert list of maps into list of arrays
-		List<String> headers = new ArrayList<>();
-		List<Object[]> dataAsListOfArrays = new ArrayList<>();
-		arrangeData(dataAsListOfMaps, headers, dataAsListOfArrays);
+	/**
+	 * Notify listeners that given input file is done
+	 */
+	void fileFinished(String jsonFileName) {
+		if (progress == null) {
+			// not called by run()
+			return;
+		}
+		progress.fileDone();
+		for (ConversionListener listener : listeners) {
+			listener.fileFinished(jsonFileName, progress);
+		}
+	}
 
-		// print to CSV
-		print(headers, dataAsListOfArrays);
+	/**
+	 * @param taskFiles index of the input file of each task
+	 * @return true if given task is the last one of its input file
+	 */
+	private static boolean isLastOfFile(List<Integer> taskFiles, int task) {
+		return task + 1 == taskFiles.size() || !taskFiles.get(task + 1).equals(taskFiles.get(task));
+	}
+
+	/**
+	 * Print statistics to stderr, or write them to --stats-file
+	 */
+	void reportStats() {
+		if (!stats.isTimed()) {
+			return;
+		}
+		if (options.getStatsFile() == null) {
+			stats.print(System.err);
+			return;
+		}
+		try (OutputStream out = new FileOutputStream(options.getStatsFile())) {
+			stats.writeJson(out);
+		} catch (IOException e) {
+			System.err.println("I/O Error while writing statistics to " + options.getStatsFile() + ": " + e.getMessage());
+		}
 	}
 
 	void handleIsUnixOption() {
@@ -58,45 +332,607 @@ public class Converter implements Runnable {
 		}
 	}
 
+	/**
+	 * No input files means stdin. Stdin is always processed in streaming mode, so that
+	 * memory is bounded; as it cannot be read twice, --header-discovery SCAN becomes SPILL.
+	 * Unless --stream or --header-discovery were given, SPILL is the default, so that
+	 * columns are the same as for a file.
+	 * Options are left untouched: effective values hold for the current run only.
+	 */
+	void handleStdin() {
+		runFiles = options.getFiles() == null || options.getFiles().isEmpty() ? List.of(JsonUtil.STDIN)
+				: options.getFiles();
+		runStream = options.isStream();
+		runHeaderDiscovery = options.getHeaderDiscovery();
+		if (runFiles.contains(JsonUtil.STDIN)) {
+			if (!options.isStream() && !options.isHeaderDiscoveryGiven()) {
+				runHeaderDiscovery = HeaderDiscovery.SPILL;
+			}
+			runStream = true;
+			if (runHeaderDiscovery == HeaderDiscovery.SCAN) {
+				runHeaderDiscovery = HeaderDiscovery.SPILL;
+			}
+		}
+	}
+
+	/**
+	 * @return input files of the current run, or of options outside run()
+	 */
+	List<String> getFiles() {
+		return runFiles != null ? runFiles : options.getFiles();
+	}
+
+	/**
+	 * @return true if the current run is in streaming mode, as options outside run()
+	 */
+	boolean isStream() {
+		return runStream != null ? runStream : options.isStream();
+	}
+
+	/**
+	 * @return header discovery of the current run, or of options outside run()
+	 */
+	HeaderDiscovery getHeaderDiscovery() {
+		return runHeaderDiscovery != null ? runHeaderDiscovery : options.getHeaderDiscovery();
+	}
+
 	/**
 	 * Read all input JSON, parse each of them, then generate a unique list of rows with all of them
-	 * (columns may be different for different rows)
+	 * (columns may be different for different rows).
+	 * 
+	 * With --threads, files are read in parallel; rows and errors are still collected in the
+	 * same order files were given. At most TASKS_PER_THREAD tasks per thread are submitted
+	 * ahead of the one being collected, so memory does not grow with the number of files.
 	 */
 	List<LinkedHashMap<String, Object>> readData() {
 		List<LinkedHashMap<String, Object>> dataAsListOfMaps = new ArrayList<>();
-		for (String jsonFileName : options.getFiles()) {
-			JsonValue data;
+		readData(dataAsListOfMaps::add);
+		return dataAsListOfMaps;
+	}
+
+	/**
+	 * Same as readData(), however rows are passed to given consumer, in order.
+	 * Rows of each file are released as soon as they are consumed.
+	 */
+	void readData(Consumer<LinkedHashMap<String, Object>> dataAsListOfMaps) {
+		jsonUtil.setMemoryMapped(options.isMmap());
+		if (options.getThreads() > 1 && (getFiles().size() > 1 || options.isJsonl())) {
+			// initialize lazy fields before Options is shared among threads
+			options.getNumberFormatter();
+			List<Callable<FileData>> jobs = new ArrayList<>();
+			List<Integer> taskFiles = new ArrayList<>();
+			List<String> files = getFiles();
+			for (int f = 0; f < files.size(); ++f) {
+				String jsonFileName = files.get(f);
+				if (options.isJsonl()) {
+					for (FileRange range : splitLines(jsonFileName)) {
+						jobs.add(() -> readLines(range));
+						taskFiles.add(f);
+					}
+				} else {
+					jobs.add(() -> readFile(jsonFileName));
+					taskFiles.add(f);
+				}
+			}
+			int window = options.getThreads() * TASKS_PER_THREAD;
+			ArrayDeque<ForkJoinTask<FileData>> tasks = new ArrayDeque<>();
+			int submitted = 0;
+			for (int i = 0; i < jobs.size(); ++i) {
+				if (limitReached) {
+					for (ForkJoinTask<FileData> task : tasks) {
+						task.cancel(false);
+					}
+					break;
+				}
+				// keep the window full, the task to collect included
+				while (submitted < jobs.size() && submitted < i + window) {
+					tasks.add(getPool().submit(jobs.get(submitted++)));
+				}
+				collect(tasks.poll().join(), dataAsListOfMaps);
+				if (isLastOfFile(taskFiles, i)) {
+					fileFinished(files.get(taskFiles.get(i)));
+				}
+			}
+		} else {
+			for (String jsonFileName : getFiles()) {
+				if (limitReached) {
+					break;
+				}
+				collect(readFile(jsonFileName), dataAsListOfMaps);
+				fileFinished(jsonFileName);
+			}
+		}
+	}
+
+	/**
+	 * Rows read from a single file, or the error occurred while reading it
+	 */
+	static class FileData {
+		List<LinkedHashMap<String, Object>> rows;
+		String error;
+		int rc;
+	}
+
+	/**
+	 * Read a single JSON file and transform it into a list of rows.
+	 * Errors are not printed here, but returned to the caller.
+	 */
+	FileData readFile(String jsonFileName) {
+		if (options.isJsonl()) {
+			return readLines(FileRange.wholeFile(jsonFileName));
+		}
+		FileData fileData = new FileData();
+		JsonValue data;
+		long start = stats.start();
+		try {
+			data = jsonUtil.jsonFromFile(jsonFileName, options.getRootPath(), getPruner());
+		} catch (FileNotFoundException e) {
+			fileData.error = "File does not exist: " + jsonFileName;
+			fileData.rc = 1;
+			return fileData;
+		} catch (IOException e) {
+			fileData.error = "I/O Error while reading file " + jsonFileName + ": " + e.getMessage();
+			fileData.rc = 2;
+			return fileData;
+		}
+
+		stats.stop(Phase.PARSE, start);
+
+		start = stats.start();
+		data = transform(data);
+		stats.stop(Phase.TRANSFORM, start);
+		fileData.rows = json2list(data, jsonFileName);
+		return fileData;
+	}
+
+	/**
+	 * Same as readFile(), for a JSON Lines file or a range of it
+	 */
+	FileData readLines(FileRange range) {
+		FileData fileData = new FileData();
+		List<LinkedHashMap<String, Object>> rows = new ArrayList<>();
+		try (JsonLinesReader reader = jsonUtil.linesFromRange(range, options.getRootPath(), getPruner())) {
+			streamRecords(reader, recordRows -> recordRows.forEachRemaining(rows::add), range.toString());
+		} catch (FileNotFoundException e) {
+			fileData.error = "File does not exist: " + range.getFileName();
+			fileData.rc = 1;
+			return fileData;
+		} catch (IOException e) {
+			fileData.error = "I/O Error while reading file " + range + ": " + e.getMessage();
+			fileData.rc = 2;
+			return fileData;
+		} catch (JsonException e) {
+			fileData.error = "Error while parsing file " + range + ": " + e.getMessage();
+			fileData.rc = 2;
+			return fileData;
+		}
+		fileData.rows = rows;
+		return fileData;
+	}
+
+	/**
+	 * Split a JSON Lines file into ranges for --threads. If the file cannot be read, or
+	 * records must be counted from the beginning of the file, the whole file is returned.
+	 */
+	List<FileRange> splitLines(String jsonFileName) {
+		if (JsonUtil.isStdin(jsonFileName) || hasIndexedPaths(options.getExcludePaths())
+				|| hasIndexedPaths(options.getOaaPaths())) {
+			return List.of(FileRange.wholeFile(jsonFileName));
+		}
+		try {
+			return FileRange.split(jsonFileName, options.getThreads() * RANGES_PER_THREAD);
+		} catch (IOException e) {
+			return List.of(FileRange.wholeFile(jsonFileName));
+		}
+	}
+
+	private void collect(FileData fileData, Consumer<LinkedHashMap<String, Object>> dataAsListOfMaps) {
+		if (fileData.error != null) {
+			System.err.println(fileData.error);
+			rc = fileData.rc;
+			return;
+		}
+		List<LinkedHashMap<String, Object>> rows = fileData.rows;
+		fileData.rows = null;
+		for (int i = 0; i < rows.size(); ++i) {
+			if (!acceptRow()) {
+				break;
+			}
+			dataAsListOfMaps.accept(rows.get(i));
+			rows.set(i, null);
+		}
+	}
+
+	/**
+	 * Thread pool used by --threads, created on first use
+	 */
+	ForkJoinPool getPool() {
+		if (pool == null) {
+			pool = new ForkJoinPool(options.getThreads());
+		}
+		return pool;
+	}
+
+	/**
+	 * Convert JSON read from given stream, which may be compressed with gzip or zlib.
+	 * Conversion is lazy: records are read and flattened only as rows are consumed, see
+	 * RowIterator. Input files and output options are ignored.
+	 */
+	public RowIterator convert(InputStream in) throws IOException {
+		return convert(jsonUtil.createReader(in));
+	}
+
+	/**
+	 * Same as convert(InputStream), for JSON text already decoded
+	 */
+	public RowIterator convert(Reader reader) {
+		// owned by the iterator, so that later runs or changes of options do not affect it
+		PathTransform transform = new PathTransform(options.getExcludePaths(), options.getOaaPaths(), jsonUtil);
+		JsonPruner recordPruner = new JsonPruner(transform, options.getMaxDepth());
+		RecordReader records;
+		try {
+			records = options.isJsonl() ? new JsonLinesReader(reader, options.getRootPath(), recordPruner)
+					: new JsonStreamReader(reader, options.getRootPath(), recordPruner);
+		} catch (RuntimeException e) {
+			IOUtils.closeQuietly(reader);
+			throw e;
+		}
+		return new RowIterator(this, records, transform);
+	}
+
+	/**
+	 * Apply --exclude and --oaa options to given JSON (root node already extracted)
+	 */
+	JsonValue transform(JsonValue data) {
+		return getPathTransform().apply(data);
+	}
+
+	/**
+	 * Apply --exclude and --oaa options to a single element of the root array.
+	 * Paths are relative to the root node, so their first identifier must be the index
+	 * of the element (or *).
+	 * 
+	 * @return modified element, or null if the whole element is excluded
+	 */
+	JsonValue transformElement(JsonValue element, int index) {
+		return getPathTransform().applyToElement(element, index);
+	}
+
+	/**
+	 * @return --exclude and --oaa paths, compiled on first use
+	 */
+	PathTransform getPathTransform() {
+		if (pathTransform == null) {
+			pathTransform = new PathTransform(options.getExcludePaths(), options.getOaaPaths(), jsonUtil);
+		}
+		return pathTransform;
+	}
+
+	/**
+	 * @return JsonPruner skipping what --root, --exclude and --max-depth throw away,
+	 *         created on first use
+	 */
+	JsonPruner getPruner() {
+		if (pruner == null) {
+			pruner = new JsonPruner(getPathTransform(), options.getMaxDepth());
+		}
+		return pruner;
+	}
+
+	/**
+	 * @return true if some of given paths refers to a specific element of the root array
+	 */
+	private boolean hasIndexedPaths(List<JsonPath> paths) {
+		for (JsonPath path: paths) {
+			if (!path.isEmpty() && !path.isWildcard(0)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Read all input JSON one record at a time, and print rows as soon as each record is flattened.
+	 * 
+	 * Columns are given by --filter-columns, if any; otherwise they depend on --header-discovery:
+	 * FIRST takes the columns of the first record, and further columns are ignored with a warning;
+	 * SCAN reads input twice, the first time only to collect columns;
+	 * SPILL writes rows to a temporary file, and prints them when all columns are known.
+	 */
+	void runStreaming() {
+		streamColumns = null;
+		ignoredColumns = null;
+		try (Printer printer = createPrinter()) {
+			if (options.isJsonl() && options.getThreads() > 1) {
+				streamRanges(printer);
+				return;
+			}
+			if (options.getOutputColumns() != null && !options.getOutputColumns().isEmpty()) {
+				setStreamColumns(options.getOutputColumns(), printer);
+			} else if (getHeaderDiscovery() == HeaderDiscovery.SCAN) {
+				setStreamColumns(scanColumns(), printer);
+			} else if (getHeaderDiscovery() == HeaderDiscovery.SPILL) {
+				try (RowSpill spill = new RowSpill(options.getNumberFormatter())) {
+					streamFiles(rows -> {
+						while (rows.hasNext() && acceptRow()) {
+							spill.write(rows.next());
+						}
+					}, true);
+					setStreamColumns(spill.getColumns(), printer);
+					spill.replay(printer::printRow);
+				}
+				return;
+			} else {
+				ignoredColumns = new HashSet<>();
+			}
+
+			streamFiles(rows -> {
+				if (streamColumns == null) {
+					// header is made of the columns of all rows of first record
+					List<LinkedHashMap<String, Object>> firstRows = new ArrayList<>();
+					rows.forEachRemaining(firstRows::add);
+					LinkedHashSet<String> columnNames = new LinkedHashSet<>();
+					for (Map<String, Object> map: firstRows) {
+						columnNames.addAll(map.keySet());
+					}
+					setStreamColumns(new ArrayList<>(columnNames), printer);
+					rows = firstRows.iterator();
+				}
+				while (rows.hasNext() && acceptRow()) {
+					printer.printRow(toArray(rows.next(), streamColumns));
+				}
+			}, true);
+
+			if (streamColumns == null) {
+				setStreamColumns(List.of(), printer);
+			}
+		} catch (IOException e) {
+			System.err.println("Error printing CSV: " + e.getMessage());
+			rc = 33;
+		}
+	}
+
+	/**
+	 * Rows of a range of a JSON Lines file, spilled to a temporary file, or the error
+	 * occurred while reading it
+	 */
+	static class RangeData {
+		RowSpill spill;
+		/** columns of the first record, for --header-discovery FIRST */
+		List<String> firstRecordColumns;
+		String error;
+		int rc;
+	}
+
+	/**
+	 * Streaming mode for JSON Lines with --threads: files are split into ranges, each range
+	 * is flattened by a separate task into its own RowSpill, then spills are printed in order.
+	 * The header is the same as in sequential mode, i.e. the union of columns of all ranges,
+	 * in order of appearance, or the columns of the first record for FIRST.
+	 */
+	void streamRanges(Printer printer) throws IOException {
+		// initialize lazy fields before Options is shared among threads
+		options.getNumberFormatter();
+		List<ForkJoinTask<RangeData>> tasks = new ArrayList<>();
+		List<Integer> taskFiles = new ArrayList<>();
+		List<String> files = getFiles();
+		for (int f = 0; f < files.size(); ++f) {
+			for (FileRange range : splitLines(files.get(f))) {
+				tasks.add(getPool().submit(() -> spillRange(range)));
+				taskFiles.add(f);
+			}
+		}
+		List<RangeData> ranges = new ArrayList<>();
+		try {
+			for (ForkJoinTask<RangeData> task : tasks) {
+				ranges.add(task.join());
+			}
+
+			if (options.getOutputColumns() != null && !options.getOutputColumns().isEmpty()) {
+				setStreamColumns(options.getOutputColumns(), printer);
+			} else if (getHeaderDiscovery() == HeaderDiscovery.FIRST) {
+				ignoredColumns = new HashSet<>();
+				List<String> columns = List.of();
+				for (RangeData range : ranges) {
+					if (range.firstRecordColumns != null) {
+						columns = range.firstRecordColumns;
+						break;
+					}
+				}
+				setStreamColumns(columns, printer);
+			} else {
+				LinkedHashSet<String> columnNames = new LinkedHashSet<>();
+				for (RangeData range : ranges) {
+					if (range.spill != null) {
+						columnNames.addAll(range.spill.getColumns());
+					}
+				}
+				setStreamColumns(new ArrayList<>(columnNames), printer);
+			}
+
+			for (int i = 0; i < ranges.size() && !limitReached; ++i) {
+				RangeData range = ranges.get(i);
+				if (range.spill != null) {
+					replayRange(range.spill, printer);
+				}
+				if (range.error != null) {
+					System.err.println(range.error);
+					rc = range.rc;
+				}
+				if (isLastOfFile(taskFiles, i)) {
+					fileFinished(files.get(taskFiles.get(i)));
+				}
+			}
+		} finally {
+			for (ForkJoinTask<RangeData> task : tasks) {
+				try {
+					RangeData range = task.join();
+					if (range.spill != null) {
+						range.spill.close();
+					}
+				} catch (RuntimeException e) {
+					// already reported by the first join(), and spill closed by spillRange()
+				}
+			}
+		}
+	}
+
+	/**
+	 * Flatten a range of a JSON Lines file into a new RowSpill. Errors are not printed here,
+	 * but returned to the caller.
+	 */
+	RangeData spillRange(FileRange range) {
+		RangeData data = new RangeData();
+		try {
+			data.spill = new RowSpill(options.getNumberFormatter());
+		} catch (IOException e) {
+			data.error = "I/O Error while creating temporary file: " + e.getMessage();
+			data.rc = 2;
+			return data;
+		}
+		try (JsonLinesReader reader = jsonUtil.linesFromRange(range, options.getRootPath(), getPruner())) {
+			streamRecords(reader, rows -> {
+				if (data.firstRecordColumns == null) {
+					List<LinkedHashMap<String, Object>> firstRows = new ArrayList<>();
+					rows.forEachRemaining(firstRows::add);
+					LinkedHashSet<String> columnNames = new LinkedHashSet<>();
+					for (Map<String, Object> map: firstRows) {
+						columnNames.addAll(map.keySet());
+					}
+					data.firstRecordColumns = new ArrayList<>(columnNames);
+					rows = firstRows.iterator();
+				}
+				while (rows.hasNext()) {
+					data.spill.write(rows.next());
+				}
+			}, range.toString());
+		} catch (FileNotFoundException e) {
+			data.error = "File does not exist: " + range.getFileName();
+			data.rc = 1;
+		} catch (IOException e) {
+			data.error = "I/O Error while reading file " + range + ": " + e.getMessage();
+			data.rc = 2;
+		} catch (JsonException e) {
+			data.error = "Error while parsing file " + range + ": " + e.getMessage();
+			data.rc = 2;
+		} catch (RuntimeException e) {
+			IOUtils.closeQuietly(data.spill);
+			throw e;
+		}
+		return data;
+	}
+
+	/**
+	 * Print rows of a spill, arranged according to streamColumns
+	 */
+	private void replayRange(RowSpill spill, Printer printer) throws IOException {
+		List<String> columns = spill.getColumns();
+		int[] indexes = new int[columns.size()];
+		for (int i = 0; i < indexes.length; ++i) {
+			indexes[i] = streamColumns.indexOf(columns.get(i));
+		}
+		spill.replay(row -> {
+			if (!acceptRow()) {
+				return;
+			}
+			Object[] target = new Object[streamColumns.size()];
+			for (int i = 0; i < row.length; ++i) {
+				if (row[i] == null) {
+					continue;
+				}
+				if (indexes[i] >= 0) {
+					target[indexes[i]] = row[i];
+				} else if (ignoredColumns != null && ignoredColumns.add(columns.get(i))) {
+					System.err.println("Warning! Column " + columns.get(i) + " not found in first record, ignored");
+				}
+			}
+			printer.printRow(target);
+		});
+	}
+
+	/**
+	 * First pass of --header-discovery SCAN: collect all columns, without retaining any value.
+	 * Errors are not reported here, they will be reported by the second pass.
+	 */
+	List<String> scanColumns() throws IOException {
+		LinkedHashSet<String> columnNames = new LinkedHashSet<>();
+		streamFiles(rows -> {
+			while (rows.hasNext()) {
+				columnNames.addAll(rows.next().keySet());
+			}
+		}, false);
+		return new ArrayList<>(columnNames);
+	}
+
+	/**
+	 * Receives the rows generated by a single record
+	 */
+	interface RecordHandler {
+		void handle(Iterator<LinkedHashMap<String, Object>> rows) throws IOException;
+	}
+
+	/**
+	 * Read all input files one record at a time, and pass rows of each record to given handler
+	 */
+	void streamFiles(RecordHandler handler, boolean reportErrors) throws IOException {
+		for (String jsonFileName : getFiles()) {
+			if (limitReached) {
+				break;
+			}
+			RecordReader reader;
 			try {
-				data = jsonUtil.jsonFromFile(jsonFileName);
+				reader = options.isJsonl() ? jsonUtil.linesFromFile(jsonFileName, options.getRootPath(), getPruner())
+						: jsonUtil.streamFromFile(jsonFileName, options.getRootPath(), getPruner());
 			} catch (FileNotFoundException e) {
-				System.err.println("File does not exist: " + jsonFileName);
-				rc = 1;
-				continue;
-			} catch (IOException e) {
-				System.err.println("I/O Error while reading file " + jsonFileName + ": " + e.getMessage());
-				rc = 2;
+				if (reportErrors) {
+					System.err.println("File does not exist: " + jsonFileName);
+					rc = 1;
+					fileFinished(jsonFileName);
+				}
 				continue;
 			}
-
-			if (options.getRoot() != null && !options.getRoot().isBlank()) {
-				data = jsonUtil.getRoot(data, options.getRoot());
+			try (reader) {
+				streamRecords(reader, handler, jsonFileName);
+			} catch (JsonException e) {
+				if (reportErrors) {
+					System.err.println("Error while parsing file " + jsonFileName + ": " + e.getMessage());
+					rc = 2;
+				}
 			}
-
-			if (options.getExclude() != null && !options.getExclude().isEmpty()) {
-				for (String path: options.getExclude())
-					data = jsonUtil.removeNode(data, path);
+			if (reportErrors) {
+				// otherwise, this is the first pass of SCAN
+				fileFinished(jsonFileName);
 			}
+		}
+	}
 
-			if (options.getOaa() != null && !options.getOaa().isEmpty()) {
-				for (String path: options.getOaa()) {
-					// FIXME: name clash possible
-					data = jsonUtil.oaa(data, path, "_key_", "value");
+	void streamRecords(RecordReader reader, RecordHandler handler, String jsonFileName) throws IOException {
+		int index = 0;
+		long start = stats.start();
+		while (!limitReached && reader.hasNext()) {
+			JsonValue data = reader.next();
+			stats.stop(Phase.PARSE, start);
+			start = stats.start();
+			if (reader.isRootArray()) {
+				data = transformElement(data, index);
+				stats.stop(Phase.TRANSFORM, start);
+				if (data != null) {
+					handler.handle(flattenRecord(data, 2, jsonFileName, index));
 				}
+				++index;
+			} else {
+				data = transform(data);
+				stats.stop(Phase.TRANSFORM, start);
+				handler.handle(flattenRecord(data, 1, jsonFileName, 0));
 			}
-			List<LinkedHashMap<String, Object>> dataAsListOfMapsForFile = json2list(data);
-			dataAsListOfMaps.addAll(dataAsListOfMapsForFile);
+			start = stats.start();
 		}
-		return dataAsListOfMaps;
+		stats.stop(Phase.PARSE, start);
+	}
+
+	private void setStreamColumns(List<String> columns, Printer printer) throws IOException {
+		streamColumns = new ColumnIndex(columns);
+		printer.printHeader(columns);
 	}
 
 	/**
@@ -112,9 +948,212 @@ public class Converter implements Runnable {
 	 * @return
 	 */
 	List<LinkedHashMap<String,Object>> json2list(JsonValue data) {
-		LinkedHashMap<String, Object> l = json2listNoJoin(data, "", 1);
-		List<LinkedHashMap<String, Object>> l2 = fullJoin(l);
-		return l2;
+		return json2list(data, null);
+	}
+
+	/**
+	 * Same as json2list(data). Each element of a root array is a distinct record, as far as
+	 * --max-rows-per-record is concerned.
+	 * 
+	 * @param jsonFileName used to report records exceeding limits. Can be null.
+	 */
+	List<LinkedHashMap<String,Object>> json2list(JsonValue data, String jsonFileName) {
+		if (options.getThreads() > 1 && data instanceof JsonArray && ((JsonArray)data).size() >= 2 * PARALLEL_CHUNK_SIZE) {
+			return json2listParallel((JsonArray)data, jsonFileName);
+		}
+		List<LinkedHashMap<String, Object>> rows = new ArrayList<>();
+		if (data instanceof JsonArray && !((JsonArray)data).isEmpty()) {
+			// same as flattening the whole array, then performing FULL JOIN on it
+			JsonArray array = (JsonArray)data;
+			for (int i = 0; i < array.size(); ++i) {
+				flattenRecord(array.get(i), 2, jsonFileName, i).forEachRemaining(rows::add);
+			}
+		} else {
+			flattenRecord(data, 1, jsonFileName, 0).forEachRemaining(rows::add);
+		}
+		return rows;
+	}
+
+	/**
+	 * Flatten a single record, i.e. the root node or an element of the root array,
+	 * and perform FULL JOIN on it. Rows are generated lazily.
+	 * 
+	 * If the estimated number of rows exceeds --max-rows-per-record, the record is reported,
+	 * and handled according to --row-limit-policy.
+	 * 
+	 * @param jsonFileName used to report records exceeding limits. Can be null.
+	 * @param index index of record inside the root array, used to report records exceeding limits
+	 */
+	Iterator<LinkedHashMap<String,Object>> flattenRecord(JsonValue data, int depth, String jsonFileName, int index) {
+		long start = stats.start();
+		LinkedHashMap<String, Object> map = json2listNoJoin(data, "", depth);
+		stats.stop(Phase.FLATTEN, start);
+		stats.addRecord();
+		Long maxRows = options.getMaxRowsPerRecord();
+		if (maxRows != null) {
+			long estimate = estimateRows(map);
+			if (estimate > maxRows) {
+				String message = "Record " + index + (jsonFileName != null ? " of file " + jsonFileName : "")
+						+ " would produce " + estimate + " rows, more than --max-rows-per-record " + maxRows;
+				switch (options.getRowLimitPolicy()) {
+					case SKIP:
+						System.err.println("Warning! " + message + ", skipped");
+						return Collections.emptyIterator();
+					case TRUNCATE:
+						System.err.println("Warning! " + message + ", truncated");
+						return StreamSupport.stream(Spliterators.spliteratorUnknownSize(stats.join(fullJoinIterator(map)), Spliterator.ORDERED), false)
+								.limit(maxRows).iterator();
+					default:
+						throw new RowLimitException(message);
+				}
+			}
+		}
+		return stats.join(fullJoinIterator(map));
+	}
+
+	/**
+	 * Estimate the number of rows that FULL JOIN will generate from given row, without performing it.
+	 * This is the product, for each List attribute, of the number of rows generated by its elements.
+	 * 
+	 * @return estimated number of rows, or Long.MAX_VALUE on overflow
+	 */
+	long estimateRows(Map<String, Object> map) {
+		long rows = 1;
+		for (Object value : map.values()) {
+			if (value instanceof List) {
+				rows = multiplyExactOrMax(rows, estimateListRows((List<?>) value));
+			}
+		}
+		return rows;
+	}
+
+	@SuppressWarnings("unchecked")
+	private long estimateListRows(List<?> list) {
+		if (list.isEmpty()) {
+			// empty lists are just removed
+			return 1;
+		}
+		long rows = 0;
+		for (Object x : list) {
+			long elementRows = 1;
+			if (x instanceof Map) {
+				elementRows = estimateRows((Map<String, Object>) x);
+			} else if (x instanceof List) {
+				elementRows = estimateListRows((List<?>) x);
+			}
+			rows = rows + elementRows < 0 ? Long.MAX_VALUE : rows + elementRows;
+		}
+		return rows;
+	}
+
+	private static long multiplyExactOrMax(long a, long b) {
+		long high = Math.multiplyHigh(a, b);
+		long low = a * b;
+		return high != 0 || low < 0 ? Long.MAX_VALUE : low;
+	}
+
+	/**
+	 * Count a row going to output, enforcing --max-total-rows.
+	 * Rows must be counted in output order.
+	 * 
+	 * @return false if row must be dropped
+	 */
+	boolean acceptRow() {
+		if (options.getMaxTotalRows() == null) {
+			return true;
+		}
+		if (acceptRow(++totalRows)) {
+			return true;
+		}
+		limitReached = true;
+		return false;
+	}
+
+	/**
+	 * Enforce --max-total-rows on the row with given (1-based) number
+	 * 
+	 * @return false if row must be dropped
+	 */
+	boolean acceptRow(long rowNumber) {
+		Long maxTotalRows = options.getMaxTotalRows();
+		if (maxTotalRows == null || rowNumber <= maxTotalRows) {
+			return true;
+		}
+		String message = "Output exceeds --max-total-rows " + maxTotalRows;
+		if (options.getRowLimitPolicy() == RowLimitPolicy.FAIL) {
+			throw new RowLimitException(message);
+		}
+		if (rowNumber == maxTotalRows + 1) {
+			System.err.println("Warning! " + message + ", further rows are dropped");
+		}
+		return false;
+	}
+
+	/**
+	 * Same as json2list, for a root array. Elements are flattened in parallel, in chunks of
+	 * PARALLEL_CHUNK_SIZE; rows are returned in the same order as elements, so that the
+	 * order of columns is preserved too.
+	 */
+	List<LinkedHashMap<String,Object>> json2listParallel(JsonArray data, String jsonFileName) {
+		// initialize lazy fields before Options is shared among threads
+		options.getNumberFormatter();
+
+		int numChunks = (data.size() + PARALLEL_CHUNK_SIZE - 1) / PARALLEL_CHUNK_SIZE;
+		// each task sets its own chunks, so the list is never structurally modified
+		List<List<LinkedHashMap<String, Object>>> chunks = new ArrayList<>(Collections.nCopies(numChunks, null));
+		FlattenTask task = new FlattenTask(data, jsonFileName, chunks, 0, numChunks);
+		if (ForkJoinTask.inForkJoinPool()) {
+			task.invoke();
+		} else {
+			getPool().invoke(task);
+		}
+
+		int size = 0;
+		for (List<LinkedHashMap<String, Object>> chunk : chunks) {
+			size += chunk.size();
+		}
+		List<LinkedHashMap<String, Object>> rows = new ArrayList<>(size);
+		for (List<LinkedHashMap<String, Object>> chunk : chunks) {
+			rows.addAll(chunk);
+		}
+		return rows;
+	}
+
+	/**
+	 * Flatten the elements of a range of chunks of the root array, splitting the range among threads
+	 */
+	class FlattenTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final JsonArray data;
+		final String jsonFileName;
+		final List<List<LinkedHashMap<String, Object>>> chunks;
+		final int fromChunk;
+		final int toChunk;
+
+		FlattenTask(JsonArray data, String jsonFileName, List<List<LinkedHashMap<String, Object>>> chunks, int fromChunk, int toChunk) {
+			this.data = data;
+			this.jsonFileName = jsonFileName;
+			this.chunks = chunks;
+			this.fromChunk = fromChunk;
+			this.toChunk = toChunk;
+		}
+
+		@Override
+		protected void compute() {
+			if (toChunk - fromChunk > 1) {
+				int mid = (fromChunk + toChunk) >>> 1;
+				invokeAll(new FlattenTask(data, jsonFileName, chunks, fromChunk, mid),
+						new FlattenTask(data, jsonFileName, chunks, mid, toChunk));
+				return;
+			}
+			List<LinkedHashMap<String, Object>> rows = new ArrayList<>();
+			int to = Math.min(data.size(), (fromChunk + 1) * PARALLEL_CHUNK_SIZE);
+			for (int i = fromChunk * PARALLEL_CHUNK_SIZE; i < to; ++i) {
+				flattenRecord(data.get(i), 2, jsonFileName, i).forEachRemaining(rows::add);
+			}
+			chunks.set(fromChunk, rows);
+		}
 	}
 
 	/**
@@ -136,7 +1175,8 @@ public class Converter implements Runnable {
 	 * Recursively transoform JsonValue into a LinkedHashMap. FULL JOIN is not performed.
 	*/
 	void addValue(LinkedHashMap<String, Object> targetMap, String key, JsonValue value, String prefix, int depth) {
-		String nonObjectKey = ((prefix + key).isEmpty()) ? "value" : prefix + key;
+		String fullKey = plan.columnName(prefix, key);
+		String nonObjectKey = fullKey.isEmpty() ? "value" : fullKey;
 		switch (value.getValueType()) {
 			case NULL:
 				targetMap.put(nonObjectKey, "");
@@ -151,23 +1191,22 @@ public class Converter implements Runnable {
 				targetMap.put(nonObjectKey, ((JsonString)value).getString());
 				break;
 			case NUMBER:
-				double number = ((JsonNumber)value).doubleValue();
-				targetMap.put(nonObjectKey, new NumberWrapper(number, options.getNumberFormat()));
+				// Integer, Long or BigDecimal, with no loss of precision
+				Number number = ((JsonNumber)value).numberValue();
+				NumberFormatter nf = options.getNumberFormatter();
+				targetMap.put(nonObjectKey, nf == null ? number : new NumberWrapper(number, nf));
 				break;
 			case OBJECT:
 				// Subproperties are mapped as new columns in the same row
 				if (options.getMaxDepth() == null || depth <= options.getMaxDepth()) {
+					String newPrefix = plan.childPrefix(prefix, key);
 					for (Map.Entry<String, JsonValue> entry : ((JsonObject)value).entrySet()) {
 						String k = entry.getKey();
 						JsonValue v = entry.getValue();
-						String newPrefix = prefix + key;
-						if (!newPrefix.isEmpty()) {
-							newPrefix += options.getAttributeSeparator();
-						}
 						addValue(targetMap, k, v, newPrefix, depth + 1);
 					}
 				} else {
-					targetMap.put(prefix + key, "[object]");
+					targetMap.put(fullKey, "[object]");
 				}
 				break;
 			case ARRAY:
@@ -175,63 +1214,48 @@ public class Converter implements Runnable {
 				if (options.getMaxDepth() == null || depth <= options.getMaxDepth()) {
 					List<Map<String,Object>> list = new ArrayList<>();
 					for (JsonValue elem : (JsonArray)value) {
-						LinkedHashMap<String, Object> submap1 = json2listNoJoin((JsonValue)elem, prefix + key, depth + 1);
+						LinkedHashMap<String, Object> submap1 = json2listNoJoin((JsonValue)elem, fullKey, depth + 1);
 						list.add(submap1);
 					}
-					targetMap.put(prefix + key, list);
+					targetMap.put(fullKey, list);
 				} else {
-					targetMap.put(prefix + key, "[array]");
+					targetMap.put(fullKey, "[array]");
 				}
 		}
 	}
 
 	/**
 	 * Remove List's from row, eventually multiplying the row itself.
+	 * 
+	 * This method must handle three cases:
+	 * 1. map does not contain any list attribute -> just return the map
+	 * 2. map contains one non empty lists -> perform full join on that list (then repeat recursively for other list attributes)
+	 * 3. map contains one empty list -> remove the attribute (then repeat recursively for other list attributes)
+	 * 
+	 * All rows are kept in memory; use fullJoinIterator() to get them one at a time.
 	 * @param map
 	 * @return
 	 */
 	List<LinkedHashMap<String, Object>> fullJoin(LinkedHashMap<String, Object> map) {
-
-		// This method must handle three cases:
-		// 1. map does not contain any list attribute -> just return the map
-		// 2. map contains one non empty lists -> perform full join on that list (then repeat recursively for other list attributes)
-		// 3. map contains one empty list -> remove the attribute (then repeat recursively for other list attributes)
 		List<LinkedHashMap<String, Object>> ret = new ArrayList<>();
-		boolean foundList = false;
-		for (Map.Entry<String,Object> attribute: map.entrySet()) {
-			if (attribute.getValue() instanceof List) {
-				List<?> listAttr = (List<?>) attribute.getValue();
-				if (listAttr.isEmpty()) {
-					map.remove(attribute.getKey());
-				} else {
-					for (Object x: listAttr) {
-						LinkedHashMap<String, Object> copy = new LinkedHashMap<>(map);
-						if (x instanceof Map) {
-							// array of objects: attributes become new columns of same map
-							copy.remove(attribute.getKey());
-							copy.putAll((Map)x);
-						} else {
-							// any other type, including array
-							copy.put(attribute.getKey(), x);
-						}
-						List<LinkedHashMap<String, Object>> parseNextLists = fullJoin(copy);
-						ret.addAll(parseNextLists);
-					}
-					foundList = true;
-					break;
-				}
-			}
-		}
-		if (!foundList) {
-			ret.add(map);
-		}
+		fullJoinIterator(map).forEachRemaining(ret::add);
 		return ret;
 	}
 
+	/**
+	 * Same as fullJoin, however rows are generated lazily, one at a time.
+	 */
+	Iterator<LinkedHashMap<String, Object>> fullJoinIterator(LinkedHashMap<String, Object> map) {
+		return new FullJoinIterator(map);
+	}
+
 	/**
 	 * Arrange rows so that they all have same lenght and order of columns.
 	 * We try to keep the original order of attributes, if possible.
 	 * 
+	 * Each column gets its index when it is first seen, so that values are written
+	 * directly into arrays in a single pass.
+	 * 
 	 * @param dataAsListOfMaps input list of maps
 	 * @param columns output list of column headers
 	 * @param dataAsListOfArrays output list of arrays
@@ -239,41 +1263,83 @@ public class Converter implements Runnable {
 	void arrangeData(List<LinkedHashMap<String, Object>> dataAsListOfMaps, List<String> columns,
 			List<Object[]> dataAsListOfArrays) {
 
-		// calculate columns
+		ColumnIndex columnIndex;
 		if (options.getOutputColumns() == null || options.getOutputColumns().isEmpty()) {
-			// the LinkedHashSet should avoid duplicates, while preserving ordering
-			LinkedHashSet<String> columnNames = new LinkedHashSet<>();
-			for (Map<String, Object> map: dataAsListOfMaps) {
-				columnNames.addAll(map.keySet());
-			}
-			columns.addAll(columnNames);
+			columnIndex = new ColumnIndex();
 		} else {
-			columns.addAll(options.getOutputColumns());
-		}
-
-		// calculate reverse map of column indexes
-		Map<String, Integer> columnIndexes = new HashMap<>(columns.size());
-		for (int i = 0; i < columns.size(); ++i) {
-			columnIndexes.put(columns.get(i), i);
+			columnIndex = new ColumnIndex(options.getOutputColumns());
 		}
 
 		// calculate output list
+		int firstRow = dataAsListOfArrays.size();
 		for (Map<String, Object> map: dataAsListOfMaps) {
-			Object[] row = new Object[columns.size()];
-			for (Map.Entry<String,Object> attribute: map.entrySet()) {
-				Integer index = columnIndexes.get(attribute.getKey());
-				if (index != null) {
-					row[index] = attribute.getValue();
+			dataAsListOfArrays.add(toArray(map, columnIndex));
+		}
+
+		// rows generated before some column was seen are shorter
+		int size = columnIndex.size();
+		for (int i = firstRow; i < dataAsListOfArrays.size(); ++i) {
+			if (dataAsListOfArrays.get(i).length < size) {
+				dataAsListOfArrays.set(i, Arrays.copyOf(dataAsListOfArrays.get(i), size));
+			}
+		}
+		columns.addAll(columnIndex.getColumns());
+	}
+
+	/**
+	 * Convert a single row into an array, according to given column indexes.
+	 * Columns never seen before are registered, unless columns are fixed; when streaming,
+	 * columns not in header are reported once.
+	 */
+	Object[] toArray(Map<String, Object> map, ColumnIndex columnIndex) {
+		return toArray(map, columnIndex, ignoredColumns);
+	}
+
+	/**
+	 * Same as toArray(Map, ColumnIndex), reporting ignored columns into given set, if not null
+	 */
+	Object[] toArray(Map<String, Object> map, ColumnIndex columnIndex, Set<String> ignoredColumns) {
+		long start = stats.start();
+		Object[] row = new Object[columnIndex.size()];
+		for (Map.Entry<String,Object> attribute: map.entrySet()) {
+			int index = columnIndex.indexOf(attribute.getKey());
+			if (index >= 0) {
+				if (index >= row.length) {
+					row = Arrays.copyOf(row, columnIndex.size());
 				}
+				row[index] = attribute.getValue();
+			} else if (ignoredColumns != null && ignoredColumns.add(attribute.getKey())) {
+				System.err.println("Warning! Column " + attribute.getKey() + " not found in first record, ignored");
 			}
-			dataAsListOfArrays.add(row);
+		}
+		stats.stop(Phase.ARRANGE, start);
+		return row;
+	}
+
+	/**
+	 * @return a new Printer, reporting to the statistics of this run
+	 */
+	Printer createPrinter() throws IOException {
+		Printer printer = new Printer(options);
+		printer.setStats(stats);
+		return printer;
+	}
+
+	void print(List<String> headers, RowBuffer buffer) {
+		Printer printer;
+		try {
+			printer = createPrinter();
+			printer.printCSV(buffer, headers);
+		} catch (IOException e) {
+			System.err.println("Error printing CSV: " + e.getMessage());
+			rc = 33;
 		}
 	}
 
 	void print(List<String> headers, List<Object[]> dataAsListOfArrays) {
 		Printer printer;
 		try {
-			printer = new Printer(options);
+			printer = createPrinter();
 			printer.printCSV(dataAsListOfArrays, headers);
 		} catch (IOException e) {
 			System.err.println("Error printing CSV: " + e.getMessage());
@@ -0,0 +1,322 @@
+package it.json2csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * CSV writer producing the same output of commons-csv CSVPrinter with QuoteMode
+ * MINIMAL, without converting every cell into a String.
+ *
+ * Characters requiring quotes are looked up in a precomputed table; booleans and
+ * integers are written with no intermediate String, and whether they need quotes is
+ * decided once for all. The quoting decision for the last String of each column is
+ * cached, as FULL JOIN repeats the same instances in consecutive rows.
+ * This class is not thread safe.
+ */
+public class CsvEmitter implements Closeable {
+
+    private static final char LF = '\n';
+    private static final char CR = '\r';
+    private static final char SP = ' ';
+    private static final char COMMENT = '#';
+
+    private static final String TRUE = "true";
+    private static final String FALSE = "false";
+
+    private final Writer out;
+    private final NumberFormatter nf;
+
+    private final char[] delimiter;
+    private final String recordSeparator;
+    /** quote char, or -1 if none */
+    private final int quote;
+    /** escape char, or -1 if none */
+    private final int escape;
+
+    /** special[c] is true if c is CR, LF, quote, escape, or first char of delimiter */
+    private final boolean[] special = new boolean[128];
+    private final boolean nonAsciiSpecial;
+
+    private final boolean quoteTrue;
+    private final boolean quoteFalse;
+    /** true if some digit or '-' is special, so that integers must be checked */
+    private final boolean checkIntegers;
+
+    /** last String printed in each column, and whether it needed quotes */
+    private Object[] lastStrings = new Object[0];
+    private boolean[] lastQuoted = new boolean[0];
+
+    private final char[] digits = new char[20];
+
+    private boolean newRecord = true;
+
+    /**
+     * Constructor
+     *
+     * @param out Writer, should be buffered
+     * @param nf  NumberFormatter for numbers. Can be null.
+     */
+    public CsvEmitter(Writer out, Options options, NumberFormatter nf) {
+        this.out = out;
+        this.nf = nf;
+        this.delimiter = options.getFieldDelimiter().toCharArray();
+        this.recordSeparator = options.getRecordDelimiter();
+        this.quote = options.getQuote() != null ? options.getQuote() : -1;
+        this.escape = options.getEscape() != null ? options.getEscape() : -1;
+        boolean nonAscii = false;
+        for (int c : new int[] { CR, LF, quote, escape, delimiter.length > 0 ? delimiter[0] : -1 }) {
+            if (c >= 128) {
+                nonAscii = true;
+            } else if (c >= 0) {
+                special[c] = true;
+            }
+        }
+        this.nonAsciiSpecial = nonAscii;
+        this.quoteTrue = needsQuotes(TRUE, false);
+        this.quoteFalse = needsQuotes(FALSE, false);
+        boolean check = nonAscii || special['-'];
+        for (char c = '0'; c <= '9'; ++c) {
+            check |= special[c];
+        }
+        this.checkIntegers = check;
+    }
+
+    /**
+     * Print a record, same as CSVPrinter.printRecord()
+     */
+    public void printRecord(Object[] row) throws IOException {
+        ensureColumns(row.length);
+        for (int column = 0; column < row.length; ++column) {
+            print(column, row[column]);
+        }
+        endRecord();
+    }
+
+    /**
+     * Print a row of a RowBuffer, padded with empty cells up to given width
+     */
+    public void printRecord(RowBuffer buffer, int row, int width) throws IOException {
+        ensureColumns(width);
+        int stored = Math.min(buffer.width(row), width);
+        for (int column = 0; column < stored; ++column) {
+            switch (buffer.type(row, column)) {
+                case RowBuffer.NULL:
+                    startField();
+                    break;
+                case RowBuffer.TRUE:
+                    printBoolean(true);
+                    break;
+                case RowBuffer.FALSE:
+                    printBoolean(false);
+                    break;
+                case RowBuffer.LONG:
+                    printLong(buffer.longValue(row, column));
+                    break;
+                case RowBuffer.NUMBER:
+                    printNumber(buffer.number(row, column));
+                    break;
+                case RowBuffer.DECIMAL:
+                    printNumber((Number) buffer.object(row, column));
+                    break;
+                default:
+                    printString(column, buffer.object(row, column));
+            }
+        }
+        for (int column = stored; column < width; ++column) {
+            startField();
+        }
+        endRecord();
+    }
+
+    private void print(int column, Object value) throws IOException {
+        if (value == null) {
+            startField();
+        } else if (value instanceof Boolean) {
+            printBoolean((Boolean) value);
+        } else if ((value instanceof Long || value instanceof Integer) && nf == null) {
+            printLong(((Number) value).longValue());
+        } else if (value instanceof BigDecimal) {
+            printNumber((Number) value);
+        } else {
+            // including NumberWrapper, that carries its own format
+            printString(column, value);
+        }
+    }
+
+    private void printBoolean(boolean value) throws IOException {
+        startField();
+        if (value) {
+            write(TRUE, quoteTrue);
+        } else {
+            write(FALSE, quoteFalse);
+        }
+    }
+
+    private void printLong(long value) throws IOException {
+        if (nf != null || checkIntegers || value == Long.MIN_VALUE) {
+            printNumber(value);
+            return;
+        }
+        startField();
+        int pos = digits.length;
+        long x = Math.abs(value);
+        do {
+            digits[--pos] = (char) ('0' + x % 10);
+            x /= 10;
+        } while (x != 0);
+        if (value < 0) {
+            digits[--pos] = '-';
+        }
+        out.write(digits, pos, digits.length - pos);
+    }
+
+    private void printNumber(Number value) throws IOException {
+        String s = nf != null ? nf.format(value) : NumberWrapper.toPlainString(value);
+        boolean newRecord = this.newRecord;
+        startField();
+        write(s, needsQuotes(s, newRecord));
+    }
+
+    private void printString(int column, Object value) throws IOException {
+        boolean newRecord = this.newRecord;
+        startField();
+        if (value == lastStrings[column] && !(value instanceof String && ((String) value).isEmpty())) {
+            write(value.toString(), lastQuoted[column]);
+            return;
+        }
+        String s = value.toString();
+        boolean quoted = needsQuotes(s, newRecord);
+        lastStrings[column] = value;
+        lastQuoted[column] = quoted;
+        write(s, quoted);
+    }
+
+    private void startField() throws IOException {
+        if (newRecord) {
+            newRecord = false;
+        } else {
+            out.write(delimiter);
+        }
+    }
+
+    private void endRecord() throws IOException {
+        if (recordSeparator != null) {
+            out.write(recordSeparator);
+        }
+        newRecord = true;
+    }
+
+    private void ensureColumns(int width) {
+        if (width > lastStrings.length) {
+            lastStrings = Arrays.copyOf(lastStrings, width);
+            lastQuoted = Arrays.copyOf(lastQuoted, width);
+        }
+    }
+
+    /**
+     * Same rules of QuoteMode.MINIMAL; always false if there is no quote char
+     */
+    private boolean needsQuotes(String s, boolean newRecord) {
+        if (quote < 0) {
+            return false;
+        }
+        int len = s.length();
+        if (len == 0) {
+            // an empty first field would be an empty line
+            return newRecord;
+        }
+        if (s.charAt(0) <= COMMENT) {
+            return true;
+        }
+        for (int i = 0; i < len; ++i) {
+            char c = s.charAt(i);
+            if ((c < 128 ? special[c] : nonAsciiSpecial)
+                    && (c == CR || c == LF || c == quote || c == escape || isDelimiterAt(s, i))) {
+                return true;
+            }
+        }
+        return s.charAt(len - 1) <= SP;
+    }
+
+    private boolean isDelimiterAt(CharSequence s, int pos) {
+        if (delimiter.length == 0 || pos + delimiter.length > s.length()) {
+            return false;
+        }
+        for (int i = 0; i < delimiter.length; ++i) {
+            if (s.charAt(pos + i) != delimiter[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void write(String s, boolean quoted) throws IOException {
+        if (quoted) {
+            writeQuoted(s);
+        } else if (quote < 0 && escape >= 0) {
+            writeEscaped(s);
+        } else {
+            out.write(s);
+        }
+    }
+
+    /**
+     * Write s in quotes, putting escape char (or quote char, if none) before any
+     * quote or escape char
+     */
+    private void writeQuoted(String s) throws IOException {
+        char q = (char) quote;
+        int esc = escape >= 0 ? escape : quote;
+        out.write(q);
+        int start = 0;
+        int len = s.length();
+        for (int i = 0; i < len; ++i) {
+            char c = s.charAt(i);
+            if (c == q || c == esc) {
+                out.write(s, start, i - start);
+                out.write(esc);
+                start = i;
+            }
+        }
+        out.write(s, start, len - start);
+        out.write(q);
+    }
+
+    /**
+     * Write s with no quote char, putting escape char before CR, LF, escape and delimiter
+     */
+    private void writeEscaped(String s) throws IOException {
+        char esc = (char) escape;
+        int start = 0;
+        int len = s.length();
+        for (int i = 0; i < len; ++i) {
+            char c = s.charAt(i);
+            boolean delimiterStart = isDelimiterAt(s, i);
+            if (c == CR || c == LF || c == esc || delimiterStart) {
+                out.write(s, start, i - start);
+                out.write(esc);
+                out.write(c == LF ? 'n' : c == CR ? 'r' : c);
+                if (delimiterStart) {
+                    for (int j = 1; j < delimiter.length; ++j) {
+                        ++i;
+                        out.write(esc);
+                        out.write(s.charAt(i));
+                    }
+                }
+                start = i + 1;
+            }
+        }
+        out.write(s, start, len - start);
+    }
+
+    /**
+     * Flush and close the underlying Writer
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
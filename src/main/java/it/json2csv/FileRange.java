@@ -0,0 +1,154 @@
+package it.json2csv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.input.BoundedInputStream;
+
+import it.json2csv.Options.CompressionFormat;
+
+/**
+ * Range of bytes of a JSON Lines file, starting and ending on line boundaries, so
+ * that each range can be converted on its own.
+ */
+public class FileRange {
+
+    /**
+     * Min size of a range, smaller files are not split
+     */
+    static final long MIN_RANGE_SIZE = 1 << 20;
+
+    private static final int SCAN_BUFFER_SIZE = 1 << 16;
+
+    private final String fileName;
+    private final long start;
+    /** end of range (exclusive), or -1 for end of file */
+    private final long end;
+
+    FileRange(String fileName, long start, long end) {
+        this.fileName = fileName;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @return a range covering the whole file
+     */
+    public static FileRange wholeFile(String fileName) {
+        return new FileRange(fileName, 0, -1);
+    }
+
+    /**
+     * Split given file into at most the given number of ranges, each starting at the
+     * beginning of a line, and not smaller than MIN_RANGE_SIZE
+     */
+    public static List<FileRange> split(String fileName, int parts) throws IOException {
+        return split(fileName, parts, MIN_RANGE_SIZE);
+    }
+
+    static List<FileRange> split(String fileName, int parts, long minRangeSize) throws IOException {
+        List<FileRange> ranges = new ArrayList<>();
+        if (Compression.detect(fileName) != CompressionFormat.NONE) {
+            // compressed data can only be read from the start
+            ranges.add(wholeFile(fileName));
+            return ranges;
+        }
+        try (FileChannel channel = new FileInputStream(fileName).getChannel()) {
+            long size = channel.size();
+            long n = Math.max(1, Math.min(parts, size / Math.max(minRangeSize, 1)));
+            if (n == 1) {
+                ranges.add(wholeFile(fileName));
+                return ranges;
+            }
+            long start = 0;
+            for (long i = 1; i < n && start < size; ++i) {
+                long end = nextLine(channel, Math.max(start + 1, size * i / n), size);
+                ranges.add(new FileRange(fileName, start, end));
+                start = end;
+            }
+            if (start < size) {
+                ranges.add(new FileRange(fileName, start, size));
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * @return the position of the first line starting at or after given position, or
+     *         size if there is none
+     */
+    private static long nextLine(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        // position is a line start if previous byte is a newline
+        long p = position - 1;
+        while (p < size) {
+            buffer.clear();
+            int n = channel.read(buffer, p);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; ++i) {
+                if (buffer.get(i) == '\n') {
+                    return p + i + 1;
+                }
+            }
+            p += n;
+        }
+        return size;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public boolean isWholeFile() {
+        return start == 0 && end < 0;
+    }
+
+    /**
+     * Open this range for reading as UTF-8. Ranges start and end on newlines, so no
+     * multi-byte sequence is broken. A whole file is decompressed if needed.
+     */
+    public Reader createReader() throws IOException {
+        return createReader(RunStats.DISABLED);
+    }
+
+    /**
+     * Same as createReader(), adding bytes read to given RunStats
+     */
+    public Reader createReader(RunStats stats) throws IOException {
+        FileInputStream in = new FileInputStream(fileName);
+        InputStream input;
+        try {
+            InputStream metered = stats.isEnabled() ? new MeteredInputStream(in, stats) : in;
+            if (isWholeFile()) {
+                input = Compression.decompress(metered, JsonUtil.READ_BUFFER_SIZE);
+            } else {
+                in.getChannel().position(start);
+                input = new BufferedInputStream(new BoundedInputStream(metered, end - start), JsonUtil.READ_BUFFER_SIZE);
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), JsonUtil.READ_BUFFER_SIZE);
+    }
+
+    /**
+     * @return file name, followed by byte range unless this is the whole file
+     */
+    @Override
+    public String toString() {
+        return isWholeFile() ? fileName : fileName + " (bytes " + start + "-" + end + ")";
+    }
+}
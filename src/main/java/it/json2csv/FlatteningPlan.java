@@ -0,0 +1,81 @@
+package it.json2csv;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Learn the schema of the records being flattened, so that column names are
+ * built only once.
+ *
+ * Column names are cached per (prefix, key) pair, so that each column name is
+ * represented by a single String instance, whose hash code is computed only once.
+ * This class is thread safe.
+ */
+public class FlatteningPlan {
+
+    /**
+     * Max number of cached names, so that objects used as hash maps (i.e. with
+     * an unbounded set of keys) do not fill memory
+     */
+    static final int MAX_CACHED_NAMES = 100_000;
+
+    private final Options options;
+
+    /** prefix => key => prefix + key */
+    private final Map<String, Map<String, String>> columnNames = new ConcurrentHashMap<>();
+
+    /** prefix => key => prefix + key + separator */
+    private final Map<String, Map<String, String>> prefixes = new ConcurrentHashMap<>();
+
+    private final AtomicInteger cachedNames = new AtomicInteger();
+
+    public FlatteningPlan(Options options) {
+        this.options = options;
+    }
+
+    /**
+     * @return prefix + key
+     */
+    public String columnName(String prefix, String key) {
+        return cached(columnNames, prefix, key, false);
+    }
+
+    /**
+     * @return prefix to be used for attributes of the object with given prefix and key,
+     * i.e. prefix + key + separator, or empty string at root level
+     */
+    public String childPrefix(String prefix, String key) {
+        if (prefix.isEmpty() && key.isEmpty()) {
+            return "";
+        }
+        return cached(prefixes, prefix, key, true);
+    }
+
+    private String cached(Map<String, Map<String, String>> cache, String prefix, String key, boolean separator) {
+        Map<String, String> byKey = cache.get(prefix);
+        if (byKey == null) {
+            if (cachedNames.get() >= MAX_CACHED_NAMES) {
+                return concat(prefix, key, separator);
+            }
+            byKey = cache.computeIfAbsent(prefix, p -> new ConcurrentHashMap<>());
+        }
+        String name = byKey.get(key);
+        if (name == null) {
+            name = concat(prefix, key, separator);
+            if (cachedNames.get() < MAX_CACHED_NAMES) {
+                String previous = byKey.putIfAbsent(key, name);
+                if (previous != null) {
+                    name = previous;
+                } else {
+                    cachedNames.incrementAndGet();
+                }
+            }
+        }
+        return name;
+    }
+
+    private String concat(String prefix, String key, boolean separator) {
+        return separator ? prefix + key + options.getAttributeSeparator() : prefix + key;
+    }
+}
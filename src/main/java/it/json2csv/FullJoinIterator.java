@@ -0,0 +1,137 @@
+package it.json2csv;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazily perform the FULL JOIN of the List attributes of a row, i.e. remove List's
+ * from row, multiplying the row itself.
+ *
+ * Rows are generated one at a time, in the same order of Converter.fullJoin().
+ * Only one partially joined row per nesting level is kept in memory, so the cartesian
+ * product is never materialized.
+ *
+ * Please notice that the given row, and the rows returned, may be modified by this iterator.
+ */
+public class FullJoinIterator implements Iterator<LinkedHashMap<String, Object>> {
+
+    /**
+     * A List attribute being expanded
+     */
+    private static class Frame {
+        /** Row containing the attribute */
+        final LinkedHashMap<String, Object> row;
+        final String key;
+        final List<?> list;
+        /** Index of next element of list */
+        int next = 0;
+
+        Frame(LinkedHashMap<String, Object> row, String key, List<?> list) {
+            this.row = row;
+            this.key = key;
+            this.list = list;
+        }
+    }
+
+    private final Deque<Frame> stack = new ArrayDeque<>();
+
+    /**
+     * Row still to be inspected for List attributes
+     */
+    private LinkedHashMap<String, Object> pending;
+
+    /**
+     * Next row to be returned
+     */
+    private LinkedHashMap<String, Object> next;
+
+    public FullJoinIterator(LinkedHashMap<String, Object> row) {
+        this.pending = row;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = advance();
+        }
+        return next != null;
+    }
+
+    @Override
+    public LinkedHashMap<String, Object> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        LinkedHashMap<String, Object> ret = next;
+        next = null;
+        return ret;
+    }
+
+    /**
+     * @return next row without List attributes, or null if none
+     */
+    private LinkedHashMap<String, Object> advance() {
+        while (true) {
+            if (pending != null) {
+                LinkedHashMap<String, Object> row = pending;
+                pending = null;
+                Frame frame = findList(row);
+                if (frame == null) {
+                    return row;
+                }
+                stack.push(frame);
+            }
+
+            Frame frame = stack.peek();
+            if (frame == null) {
+                return null;
+            }
+            Object x = frame.list.get(frame.next++);
+            LinkedHashMap<String, Object> copy;
+            if (frame.next < frame.list.size()) {
+                copy = new LinkedHashMap<>(frame.row);
+            } else {
+                // last element: no more copies of this row are needed
+                copy = frame.row;
+                stack.pop();
+            }
+            if (x instanceof Map) {
+                // array of objects: attributes become new columns of same row
+                copy.remove(frame.key);
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) x).entrySet()) {
+                    copy.put((String) entry.getKey(), entry.getValue());
+                }
+            } else {
+                // any other type, including array
+                copy.put(frame.key, x);
+            }
+            pending = copy;
+        }
+    }
+
+    /**
+     * Find first non-empty List attribute of row. Empty List attributes found before it are removed.
+     *
+     * @return null if there is no such attribute
+     */
+    private Frame findList(LinkedHashMap<String, Object> row) {
+        Iterator<Map.Entry<String, Object>> it = row.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Object> attribute = it.next();
+            if (attribute.getValue() instanceof List) {
+                List<?> list = (List<?>) attribute.getValue();
+                if (list.isEmpty()) {
+                    it.remove();
+                } else {
+                    return new Frame(row, attribute.getKey(), list);
+                }
+            }
+        }
+        return null;
+    }
+}
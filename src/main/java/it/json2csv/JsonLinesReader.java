@@ -0,0 +1,119 @@
+package it.json2csv;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.NoSuchElementException;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+
+/**
+ * Read a JSON Lines (NDJSON) document, i.e. one JSON value per line, one record at a time.
+ *
+ * Lines behave as the elements of a root array; blank lines, and lines where the
+ * root node does not exist, are ignored. Only the current line is kept in memory.
+ */
+public class JsonLinesReader implements RecordReader {
+
+    private final BufferedReader reader;
+    private final JsonPath rootPath;
+    private final JsonPruner pruner;
+    private long lineNumber = 0;
+    /** number of records returned so far, i.e. index of next record */
+    private int index = 0;
+    private boolean finished;
+    private JsonValue next;
+
+    /**
+     * Constructor
+     *
+     * @param reader input JSON Lines
+     * @param rootPath path of the root node inside each line. Can be empty.
+     * @param pruner used to skip excluded subtrees while reading lines
+     */
+    public JsonLinesReader(Reader reader, JsonPath rootPath, JsonPruner pruner) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        this.rootPath = rootPath;
+        this.pruner = pruner;
+    }
+
+    /**
+     * @return always true, each line is a record
+     */
+    @Override
+    public boolean isRootArray() {
+        return true;
+    }
+
+    /**
+     * @return number of lines read so far
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null && !finished) {
+            String line;
+            try {
+                line = reader.readLine();
+            } catch (IOException e) {
+                throw new JsonException("I/O error while reading line " + (lineNumber + 1), e);
+            }
+            if (line == null) {
+                finished = true;
+                break;
+            }
+            ++lineNumber;
+            if (lineNumber == 1 && line.startsWith("\uFEFF")) {
+                line = line.substring(1);
+            }
+            if (line.isBlank()) {
+                continue;
+            }
+            next = parse(line);
+        }
+        return next != null;
+    }
+
+    /**
+     * @return the root node of given line, or null if it does not exist
+     */
+    private JsonValue parse(String line) {
+        try (JsonParser parser = Json.createParser(new StringReader(line))) {
+            Event event = JsonPruner.moveToRoot(parser, parser.next(), rootPath);
+            if (event == null) {
+                return null;
+            }
+            JsonValue value = pruner.readElement(parser, event, index);
+            if (rootPath.isEmpty() && parser.hasNext()) {
+                parser.next(); // throws JsonParsingException
+            }
+            ++index;
+            return value;
+        } catch (JsonException e) {
+            throw new JsonException("line " + lineNumber + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public JsonValue next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        JsonValue ret = next;
+        next = null;
+        return ret;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
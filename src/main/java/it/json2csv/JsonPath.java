@@ -0,0 +1,175 @@
+package it.json2csv;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Path inside a JSON document, in the form aaa/bbb/2/ccc, parsed once into its segments.
+ *
+ * "//" denotes a single slash character instead of a separator; "*" denotes all elements
+ * of an array. Whether each segment is an array index is decided at parse time, so that
+ * paths can be matched with no further string handling.
+ * This class is immutable.
+ */
+public class JsonPath {
+
+    public static final String WILDCARD = "*";
+
+    public static final JsonPath EMPTY = new JsonPath("", new String[0]);
+
+    private final String path;
+    private final String[] segments;
+    private final boolean[] wildcards;
+    /** segments as array indexes, valid only where isIndex[i] */
+    private final int[] indexes;
+    private final boolean[] isIndex;
+
+    private JsonPath(String path, String[] segments) {
+        this.path = path;
+        this.segments = segments;
+        this.wildcards = new boolean[segments.length];
+        this.indexes = new int[segments.length];
+        this.isIndex = new boolean[segments.length];
+        for (int i = 0; i < segments.length; ++i) {
+            wildcards[i] = WILDCARD.equals(segments[i]);
+            try {
+                indexes[i] = Integer.parseInt(segments[i]);
+                isIndex[i] = true;
+            } catch (NumberFormatException e) {
+                isIndex[i] = false;
+            }
+        }
+    }
+
+    /**
+     * Convert "aa/22/cc" into ["aa","22","cc"]
+     *
+     * @param path path, or null for the empty path
+     */
+    public static JsonPath parse(String path) {
+        if (path == null || path.isEmpty()) {
+            return EMPTY;
+        }
+        String[] pieces = new String[count(path)];
+        int n = 0;
+        int lastIndex = 0;
+        int length = path.length();
+        for (int i = 0; i < length; ++i) {
+            if (path.charAt(i) == '/') {
+                if (i + 1 == length || path.charAt(i + 1) != '/') {
+                    pieces[n++] = unescape(path, lastIndex, i);
+                    lastIndex = i + 1;
+                } else {
+                    ++i;
+                }
+            } else if (i == length - 1) {
+                pieces[n++] = unescape(path, lastIndex, length);
+            }
+        }
+        return new JsonPath(path, n == pieces.length ? pieces : Arrays.copyOf(pieces, n));
+    }
+
+    /**
+     * @return upper bound of the number of segments
+     */
+    private static int count(String path) {
+        int n = 1;
+        for (int i = 0; i < path.length(); ++i) {
+            if (path.charAt(i) == '/') {
+                ++n;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return path.substring(start, end), with "//" replaced by "/"
+     */
+    private static String unescape(String path, int start, int end) {
+        int slash = path.indexOf("//", start);
+        if (slash < 0 || slash >= end) {
+            return path.substring(start, end);
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; ++i) {
+            char c = path.charAt(i);
+            sb.append(c);
+            if (c == '/' && i + 1 < end && path.charAt(i + 1) == '/') {
+                ++i;
+            }
+        }
+        return sb.toString();
+    }
+
+    public int size() {
+        return segments.length;
+    }
+
+    public boolean isEmpty() {
+        return segments.length == 0;
+    }
+
+    public String segment(int i) {
+        return segments[i];
+    }
+
+    /**
+     * @return true if i-th segment is "*"
+     */
+    public boolean isWildcard(int i) {
+        return wildcards[i];
+    }
+
+    /**
+     * @return true if i-th segment is an integer, i.e. it can be an array index
+     */
+    public boolean isIndex(int i) {
+        return isIndex[i];
+    }
+
+    /**
+     * @return i-th segment as an array index
+     * @throws NumberFormatException if the segment is not an integer
+     */
+    public int index(int i) {
+        if (!isIndex[i]) {
+            return Integer.valueOf(segments[i]); // throws NumberFormatException
+        }
+        return indexes[i];
+    }
+
+    /**
+     * @return true if i-th segment denotes given array element, i.e. it is either "*" or
+     *         given index
+     * @throws NumberFormatException if the segment is neither "*" nor an integer
+     */
+    public boolean matchesIndex(int i, int index) {
+        return wildcards[i] || index(i) == index;
+    }
+
+    /**
+     * @return segments, as an unmodifiable list
+     */
+    public List<String> getSegments() {
+        return Collections.unmodifiableList(Arrays.asList(segments));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof JsonPath && Arrays.equals(segments, ((JsonPath) obj).segments);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(segments);
+    }
+
+    /**
+     * @return path as it was given
+     */
+    @Override
+    public String toString() {
+        return path;
+    }
+}
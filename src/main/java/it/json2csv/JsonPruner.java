@@ -0,0 +1,222 @@
+package it.json2csv;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonBuilderFactory;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+
+import it.json2csv.PathTransform.Node;
+
+/**
+ * Build JsonValue's from JsonParser events, skipping the subtrees that would be thrown away
+ * anyway: nodes outside --root, nodes removed by --exclude, and content of objects and
+ * arrays deeper than --max-depth. Skipped subtrees are parsed, but no JsonValue is created.
+ *
+ * The result, after PathTransform is applied, gives the same rows as the whole document:
+ * excluded object members are left out; excluded array elements are replaced by null, so
+ * that indexes do not change, and PathTransform removes them; objects and arrays beyond
+ * --max-depth are replaced by empty ones, which are printed the same.
+ * This class is thread safe.
+ */
+public class JsonPruner {
+
+    /** Prune nothing */
+    public static final JsonPruner NONE = new JsonPruner(null, null);
+
+    /** depth of a record which is the root node, as in Converter.flattenRecord() */
+    static final int ROOT_DEPTH = 1;
+    /** depth of a record which is an element of the root array */
+    static final int ELEMENT_DEPTH = 2;
+
+    private static final JsonBuilderFactory FACTORY = Json.createBuilderFactory(null);
+
+    /** exclude paths, relative to the root node, or null */
+    private final Node excludes;
+    private final Integer maxDepth;
+
+    /**
+     * Constructor
+     *
+     * @param transform --exclude and --oaa paths. Can be null.
+     * @param maxDepth  --max-depth. Can be null.
+     */
+    public JsonPruner(PathTransform transform, Integer maxDepth) {
+        this.excludes = transform == null ? null : transform.getExcludes();
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Skip events until the node denoted by given path is reached.
+     *
+     * @param event    first event of the document
+     * @param rootPath path of the root node, can be empty
+     * @return the first event of the node, or null if the node does not exist
+     */
+    static Event moveToRoot(JsonParser parser, Event event, JsonPath rootPath) {
+        for (int i = 0; i < rootPath.size(); ++i) {
+            if (event == Event.START_OBJECT) {
+                event = moveToKey(parser, rootPath.segment(i));
+            } else if (event == Event.START_ARRAY) {
+                event = moveToIndex(parser, rootPath.index(i)); // may throw NumberFormatException
+            } else {
+                throw new IllegalArgumentException("rootPath " + rootPath + " expects Object or Array");
+            }
+            if (event == null) {
+                break;
+            }
+        }
+        return event;
+    }
+
+    private static Event moveToKey(JsonParser parser, String key) {
+        Event event;
+        while ((event = parser.next()) != Event.END_OBJECT) {
+            String k = parser.getString();
+            event = parser.next();
+            if (k.equals(key)) {
+                return event;
+            }
+            skip(parser, event);
+        }
+        return null;
+    }
+
+    private static Event moveToIndex(JsonParser parser, int index) {
+        Event event;
+        int i = 0;
+        while ((event = parser.next()) != Event.END_ARRAY) {
+            if (i++ == index) {
+                return event;
+            }
+            skip(parser, event);
+        }
+        throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + i);
+    }
+
+    private static void skip(JsonParser parser, Event event) {
+        if (event == Event.START_OBJECT) {
+            parser.skipObject();
+        } else if (event == Event.START_ARRAY) {
+            parser.skipArray();
+        }
+    }
+
+    /**
+     * Read a whole document, i.e. the root node and all of its content
+     *
+     * @param rootPath path of the root node, can be empty
+     * @return the root node, or null if it does not exist
+     */
+    public JsonValue readDocument(JsonParser parser, JsonPath rootPath) {
+        Event event = moveToRoot(parser, parser.next(), rootPath);
+        if (event == null) {
+            return null;
+        }
+        if (event != Event.START_ARRAY) {
+            return readRecord(parser, event);
+        }
+        JsonArrayBuilder builder = FACTORY.createArrayBuilder();
+        int index = 0;
+        while ((event = parser.next()) != Event.END_ARRAY) {
+            builder.add(readElement(parser, event, index++));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Read the root node, when it is a single record
+     *
+     * @param event current event, i.e. the first one of the root node
+     */
+    public JsonValue readRecord(JsonParser parser, Event event) {
+        // the root node itself is never replaced
+        return read(parser, event, excludes, ROOT_DEPTH, true);
+    }
+
+    /**
+     * Read an element of the root array
+     *
+     * @param event current event, i.e. the first one of the element
+     * @return the element, or JsonValue.NULL if it is excluded
+     */
+    public JsonValue readElement(JsonParser parser, Event event, int index) {
+        Node node = excludes == null ? null : excludes.forIndexIfValid(index);
+        if (node != null && node.exclude) {
+            skip(parser, event);
+            return JsonValue.NULL;
+        }
+        return read(parser, event, node, ELEMENT_DEPTH, false);
+    }
+
+    /**
+     * @param node  exclude paths relative to this value, or null
+     * @param depth depth of this value, as in Converter.addValue()
+     */
+    private JsonValue read(JsonParser parser, Event event, Node node, int depth, boolean root) {
+        switch (event) {
+            case START_OBJECT:
+                if (!root && maxDepth != null && depth > maxDepth) {
+                    parser.skipObject();
+                    return JsonValue.EMPTY_JSON_OBJECT;
+                }
+                if (node == null && maxDepth == null) {
+                    return parser.getObject();
+                }
+                return readObject(parser, node, depth);
+            case START_ARRAY:
+                if (!root && maxDepth != null && depth > maxDepth) {
+                    parser.skipArray();
+                    return JsonValue.EMPTY_JSON_ARRAY;
+                }
+                if (node == null && maxDepth == null) {
+                    return parser.getArray();
+                }
+                return readArray(parser, node, depth);
+            case VALUE_TRUE:
+                return JsonValue.TRUE;
+            case VALUE_FALSE:
+                return JsonValue.FALSE;
+            case VALUE_NULL:
+                return JsonValue.NULL;
+            default:
+                // strings and numbers
+                return parser.getValue();
+        }
+    }
+
+    private JsonValue readObject(JsonParser parser, Node node, int depth) {
+        JsonObjectBuilder builder = FACTORY.createObjectBuilder();
+        Event event;
+        while ((event = parser.next()) != Event.END_OBJECT) {
+            String key = parser.getString();
+            event = parser.next();
+            Node child = node == null ? null : node.children.get(key);
+            if (child != null && child.exclude) {
+                skip(parser, event);
+            } else {
+                builder.add(key, read(parser, event, child, depth + 1, false));
+            }
+        }
+        return builder.build();
+    }
+
+    private JsonValue readArray(JsonParser parser, Node node, int depth) {
+        JsonArrayBuilder builder = FACTORY.createArrayBuilder();
+        Event event;
+        int index = 0;
+        while ((event = parser.next()) != Event.END_ARRAY) {
+            Node child = node == null ? null : node.forIndexIfValid(index);
+            ++index;
+            if (child != null && child.exclude) {
+                skip(parser, event);
+                builder.add(JsonValue.NULL);
+            } else {
+                builder.add(read(parser, event, child, depth + 1, false));
+            }
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,98 @@
+package it.json2csv;
+
+import java.io.Reader;
+import java.util.NoSuchElementException;
+
+import javax.json.Json;
+import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+
+/**
+ * Read a JSON document one record at a time, using JsonParser events.
+ *
+ * If the root node is an array, each of its elements is a record; otherwise the
+ * whole root node is a single record. Only the current record is materialized
+ * as a JsonValue, so memory does not depend on the size of the document; nodes
+ * outside the root node, and subtrees skipped by the JsonPruner, are not
+ * materialized at all.
+ */
+public class JsonStreamReader implements RecordReader {
+
+    private final JsonParser parser;
+    private final JsonPruner pruner;
+    /** index of next element of the root array */
+    private int index = 0;
+    private boolean rootIsArray;
+    private boolean finished;
+    private JsonValue next;
+
+    /**
+     * Constructor
+     *
+     * @param reader input JSON
+     * @param rootPath path of the root node. Can be empty.
+     */
+    public JsonStreamReader(Reader reader, JsonPath rootPath) {
+        this(reader, rootPath, JsonPruner.NONE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param reader input JSON
+     * @param rootPath path of the root node. Can be empty.
+     * @param pruner used to skip excluded subtrees while reading records
+     */
+    public JsonStreamReader(Reader reader, JsonPath rootPath, JsonPruner pruner) {
+        this.parser = Json.createParser(reader);
+        this.pruner = pruner;
+        Event event = JsonPruner.moveToRoot(parser, parser.next(), rootPath);
+        if (event == null) {
+            finished = true;
+        } else if (event == Event.START_ARRAY) {
+            rootIsArray = true;
+        } else {
+            next = pruner.readRecord(parser, event);
+        }
+    }
+
+    /**
+     * @return true if the root node is an array, i.e. records are its elements
+     */
+    @Override
+    public boolean isRootArray() {
+        return rootIsArray;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !finished && rootIsArray) {
+            Event event = parser.next();
+            if (event == Event.END_ARRAY) {
+                finished = true;
+            } else {
+                next = pruner.readElement(parser, event, index++);
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public JsonValue next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        JsonValue ret = next;
+        next = null;
+        if (!rootIsArray) {
+            finished = true;
+        }
+        return ret;
+    }
+
+    @Override
+    public void close() {
+        parser.close();
+    }
+}
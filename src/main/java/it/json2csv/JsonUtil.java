@@ -1,10 +1,13 @@
 package it.json2csv;
 
+import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.LinkedList;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map.Entry;
 
@@ -16,12 +19,58 @@ import javax.json.JsonObjectBuilder;
 import javax.json.JsonReader;
 import javax.json.JsonString;
 import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+
+import it.json2csv.Options.CompressionFormat;
 
 public class JsonUtil {
 
+	/**
+	 * Size of buffers used when files are not memory-mapped
+	 */
+	static final int READ_BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * File name denoting standard input
+	 */
+	public static final String STDIN = "-";
+
+	/**
+	 * If true, input files are memory-mapped
+	 */
+	private boolean memoryMapped = false;
+
+	/**
+	 * Receives the number of bytes read from input files
+	 */
+	private RunStats stats = RunStats.DISABLED;
+
+	public static boolean isStdin(String filename) {
+		return STDIN.equals(filename);
+	}
+
+	public boolean isMemoryMapped() {
+		return memoryMapped;
+	}
+
+	public void setMemoryMapped(boolean memoryMapped) {
+		this.memoryMapped = memoryMapped;
+	}
+
+	public RunStats getStats() {
+		return stats;
+	}
+
+	public void setStats(RunStats stats) {
+		this.stats = stats;
+	}
+
 	JsonValue jsonFromFile(String filename) throws FileNotFoundException, IOException {
 		JsonValue data = null;
-		try (FileReader fr = new FileReader(filename)) {
+		try (Reader fr = createReader(filename)) {
 			try (JsonReader jsonReader = Json.createReader(fr)) {
 				data = jsonReader.readValue();
 			}
@@ -29,6 +78,92 @@ public class JsonUtil {
 		return data;
 	}
 
+	/**
+	 * Read the root node of given file, skipping the subtrees pruned by given JsonPruner.
+	 * Content after the root node is not parsed.
+	 * 
+	 * @param rootPath path of the root node, can be empty
+	 * @return the root node, or null if it does not exist
+	 */
+	JsonValue jsonFromFile(String filename, JsonPath rootPath, JsonPruner pruner) throws IOException {
+		try (Reader reader = createReader(filename); JsonParser parser = Json.createParser(reader)) {
+			return pruner.readDocument(parser, rootPath);
+		}
+	}
+
+	/**
+	 * Open given file for reading records one at a time.
+	 * The caller must close the returned reader.
+	 * 
+	 * @param rootPath path of the root node, can be empty
+	 */
+	JsonStreamReader streamFromFile(String filename, JsonPath rootPath, JsonPruner pruner) throws IOException {
+		Reader reader = createReader(filename);
+		try {
+			return new JsonStreamReader(reader, rootPath, pruner);
+		} catch (RuntimeException e) {
+			IOUtils.closeQuietly(reader);
+			throw e;
+		}
+	}
+
+	/**
+	 * Open given JSON Lines file for reading records, i.e. lines, one at a time.
+	 * The caller must close the returned reader.
+	 * 
+	 * @param rootPath path of the root node inside each line, can be empty
+	 */
+	JsonLinesReader linesFromFile(String filename, JsonPath rootPath, JsonPruner pruner) throws IOException {
+		return new JsonLinesReader(createReader(filename), rootPath, pruner);
+	}
+
+	/**
+	 * Same as linesFromFile(), for a range of a file
+	 */
+	JsonLinesReader linesFromRange(FileRange range, JsonPath rootPath, JsonPruner pruner) throws IOException {
+		if (range.isWholeFile()) {
+			return linesFromFile(range.getFileName(), rootPath, pruner);
+		}
+		return new JsonLinesReader(range.createReader(stats), rootPath, pruner);
+	}
+
+	/**
+	 * Open given UTF-8 file, either memory-mapped or through large buffers. Files
+	 * compressed with gzip or zlib are decompressed, and never memory-mapped.
+	 * STDIN means standard input, which is not closed by the returned Reader.
+	 */
+	Reader createReader(String filename) throws IOException {
+		if (isStdin(filename)) {
+			return createReader(CloseShieldInputStream.wrap(System.in));
+		}
+		if (memoryMapped && Compression.detect(filename) == CompressionFormat.NONE) {
+			return new MappedUtf8Reader(filename, stats);
+		}
+		FileInputStream in = new FileInputStream(filename);
+		try {
+			return createReader(in);
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Read UTF-8 text from given stream, decompressing it if compressed with gzip or zlib
+	 */
+	Reader createReader(InputStream in) throws IOException {
+		return new BufferedReader(new InputStreamReader(
+				Compression.decompress(meter(in), READ_BUFFER_SIZE), StandardCharsets.UTF_8),
+				READ_BUFFER_SIZE);
+	}
+
+	/**
+	 * @return given stream, counting bytes read if statistics are enabled
+	 */
+	InputStream meter(InputStream in) {
+		return stats.isEnabled() ? new MeteredInputStream(in, stats) : in;
+	}
+
     /**
      * Estract subtree from given JSON.
      *
@@ -40,15 +175,21 @@ public class JsonUtil {
      * Use "//" to denote a single slash character instead of a separator
      */
     public JsonValue getRoot(JsonValue value, String rootPath) {
+        return getRoot(value, JsonPath.parse(rootPath));
+    }
+
+    /**
+     * Same as getRoot(JsonValue, String), with a path already parsed
+     */
+    public JsonValue getRoot(JsonValue value, JsonPath rootPath) {
         if (value == null) {
             return null;
         }
-        List<String> ids = extractIdentifiers(rootPath);
-        for (String id: ids) {
+        for (int i = 0; i < rootPath.size(); ++i) {
             if (value instanceof JsonObject) {
-                value = ((JsonObject)value).get(id);
+                value = ((JsonObject)value).get(rootPath.segment(i));
             } else if (value instanceof JsonArray) {
-                int index = Integer.valueOf(id); // may throw NumberFormatException
+                int index = rootPath.index(i); // may throw NumberFormatException
                 value = ((JsonArray)value).get(index); // may throw IndexOutOfBoundsException
             } else {
                 throw new IllegalArgumentException("rootPath " + rootPath + " expects Object or Array");
@@ -64,23 +205,7 @@ public class JsonUtil {
      * Convert "aa/22/cc"  into ["aa","22","cc"]
     */
     List<String> extractIdentifiers(String path) {
-        int lastIndex = 0;
-        List<String> pieces = new ArrayList<>();
-        for (int i = 0; i < path.length(); ++i) {
-            if (path.charAt(i) == '/') {
-                if (path.length() == i + 1 || path.charAt(i + 1) != '/') {
-                    String piece = path.substring(lastIndex, i);
-                    pieces.add(piece.replaceAll("//", "/"));
-                    lastIndex = i + 1;
-                } else if (path.charAt(i + 1) == '/') {
-                    ++i;
-                }
-            } else if (i == path.length() - 1) {
-                String piece = path.substring(lastIndex);
-                pieces.add(piece.replaceAll("//", "/"));
-            }
-        }
-        return pieces;
+        return JsonPath.parse(path).getSegments();
     }
 
     /**
@@ -95,41 +220,47 @@ public class JsonUtil {
      * @return modified copy of input
      */
     public JsonValue removeNode(JsonValue value, String nodePath) {
+        return removeNode(value, JsonPath.parse(nodePath));
+    }
+
+    /**
+     * Same as removeNode(JsonValue, String), with a path already parsed
+     */
+    public JsonValue removeNode(JsonValue value, JsonPath nodePath) {
         if (value == null) {
             return null;
         }
-        List<String> ids = extractIdentifiers(nodePath);
-        return removeNodeRecursive(value, ids);
+        return removeNodeRecursive(value, nodePath, 0);
     }
 
-    protected JsonValue removeNodeRecursive(JsonValue value, List<String> nodePath) {
-        if (nodePath.size() < 1) {
+    /**
+     * @param offset number of segments of nodePath already matched
+     */
+    protected JsonValue removeNodeRecursive(JsonValue value, JsonPath nodePath, int offset) {
+        if (offset >= nodePath.size()) {
             return value;
         }
-        String firstPath = nodePath.get(0);
+        boolean last = offset == nodePath.size() - 1;
         if (value instanceof JsonObject) {
+            String firstPath = nodePath.segment(offset);
             JsonObjectBuilder builder = Json.createObjectBuilder();
             for (Entry<String, JsonValue> entry:((JsonObject)value).entrySet()) {
                 if (!entry.getKey().equals(firstPath)) {
                     builder.add(entry.getKey(), entry.getValue());
-                } else if (nodePath.size() > 1) {
-                    List<String> morePaths = new LinkedList<>(nodePath);
-                    morePaths.remove(0);
-                    builder.add(entry.getKey(), removeNodeRecursive(entry.getValue(), morePaths));
+                } else if (!last) {
+                    builder.add(entry.getKey(), removeNodeRecursive(entry.getValue(), nodePath, offset + 1));
                 }
             }
             return builder.build();
         } else if (value instanceof JsonArray) {
-            boolean star = "*".equals(nodePath.get(0));
-            int index = star ? -1 : Integer.valueOf(nodePath.get(0));
+            boolean star = nodePath.isWildcard(offset);
+            int index = star ? -1 : nodePath.index(offset);
             JsonArrayBuilder builder = Json.createArrayBuilder();
             for (int i = 0; i < ((JsonArray)value).size(); ++i) {
                 if (!star && i != index) {
                     builder.add(((JsonArray)value).get(i));
-                } else if (nodePath.size() > 1) {
-                    List<String> morePaths = new LinkedList<>(nodePath);
-                    morePaths.remove(0);
-                    builder.add(removeNodeRecursive(((JsonArray)value).get(i), morePaths));
+                } else if (!last) {
+                    builder.add(removeNodeRecursive(((JsonArray)value).get(i), nodePath, offset + 1));
                 }
             }
             return builder.build();
@@ -152,15 +283,24 @@ public class JsonUtil {
      * @return modified copy of input
      */
     public JsonValue oaa(JsonValue value, String nodePath, String nameKey, String valueKey) {
+        return oaa(value, JsonPath.parse(nodePath), nameKey, valueKey);
+    }
+
+    /**
+     * Same as oaa(JsonValue, String, String, String), with a path already parsed
+     */
+    public JsonValue oaa(JsonValue value, JsonPath nodePath, String nameKey, String valueKey) {
         if (value == null) {
             return null;
         }
-        List<String> ids = extractIdentifiers(nodePath);
-        return oaaRecursive(value, ids, nameKey, valueKey);
+        return oaaRecursive(value, nodePath, 0, nameKey, valueKey);
     }
 
-    protected JsonValue oaaRecursive(JsonValue value, List<String> nodePath, String nameKey, String valueKey) {
-        if (nodePath.size() == 0) {
+    /**
+     * @param offset number of segments of nodePath already matched
+     */
+    protected JsonValue oaaRecursive(JsonValue value, JsonPath nodePath, int offset, String nameKey, String valueKey) {
+        if (offset >= nodePath.size()) {
             // convert object to array
             if (value instanceof JsonObject) {
                 return convertObjectToArray((JsonObject) value, nameKey, valueKey);
@@ -174,30 +314,26 @@ public class JsonUtil {
                 throw new IllegalArgumentException("object-as-array nodePath expects Object or Array");
             }
         }
-        String firstPath = nodePath.get(0);
         if (value instanceof JsonObject) {
+            String firstPath = nodePath.segment(offset);
             JsonObjectBuilder builder = Json.createObjectBuilder();
             for (Entry<String, JsonValue> entry:((JsonObject)value).entrySet()) {
                 if (!entry.getKey().equals(firstPath)) {
                     builder.add(entry.getKey(), entry.getValue());
                 } else {
-                    List<String> morePaths = new LinkedList<>(nodePath);
-                    morePaths.remove(0);
-                    builder.add(entry.getKey(), oaaRecursive(entry.getValue(), morePaths, nameKey, valueKey));
+                    builder.add(entry.getKey(), oaaRecursive(entry.getValue(), nodePath, offset + 1, nameKey, valueKey));
                 }
             }
             return builder.build();
         } else if (value instanceof JsonArray) {
-            boolean star = "*".equals(nodePath.get(0));
-            int index = star ? -1 : Integer.valueOf(nodePath.get(0));
+            boolean star = nodePath.isWildcard(offset);
+            int index = star ? -1 : nodePath.index(offset);
             JsonArrayBuilder builder = Json.createArrayBuilder();
             for (int i = 0; i < ((JsonArray)value).size(); ++i) {
                 if (!star && i != index) {
                     builder.add(((JsonArray)value).get(i));
                 } else {
-                    List<String> morePaths = new LinkedList<>(nodePath);
-                    morePaths.remove(0);
-                    builder.add(oaaRecursive(((JsonArray)value).get(i), morePaths, nameKey, valueKey));
+                    builder.add(oaaRecursive(((JsonArray)value).get(i), nodePath, offset + 1, nameKey, valueKey));
                 }
             }
             return builder.build();
@@ -0,0 +1,187 @@
+package it.json2csv;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reader of a UTF-8 file, memory-mapped one window at a time.
+ *
+ * Bytes are decoded directly from the mapped region, with a fast path for ASCII.
+ * Malformed input is replaced by U+FFFD, as InputStreamReader does.
+ * This class is not thread safe.
+ */
+public class MappedUtf8Reader extends Reader {
+
+    /** Default size of mapped windows, a file larger than this is mapped in more windows */
+    public static final int DEFAULT_WINDOW_SIZE = 1 << 26;
+
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int windowSize;
+    /** receives the number of bytes decoded */
+    private final RunStats stats;
+
+    private MappedByteBuffer window;
+    /** file position of first byte of window */
+    private long windowStart = 0;
+
+    /** low surrogate not returned yet, because caller's buffer was full */
+    private char pendingLowSurrogate = 0;
+
+    public MappedUtf8Reader(String fileName) throws IOException {
+        this(fileName, RunStats.DISABLED);
+    }
+
+    /**
+     * Same as MappedUtf8Reader(String), adding bytes decoded to given RunStats
+     */
+    public MappedUtf8Reader(String fileName, RunStats stats) throws IOException {
+        this(fileName, DEFAULT_WINDOW_SIZE, stats);
+    }
+
+    MappedUtf8Reader(String fileName, int windowSize) throws IOException {
+        this(fileName, windowSize, RunStats.DISABLED);
+    }
+
+    MappedUtf8Reader(String fileName, int windowSize, RunStats stats) throws IOException {
+        // FileInputStream throws FileNotFoundException, as FileReader does
+        this.channel = new FileInputStream(fileName).getChannel();
+        this.windowSize = Math.max(windowSize, 4);
+        this.stats = stats;
+        try {
+            this.fileSize = channel.size();
+            map(0);
+        } catch (IOException | RuntimeException e) {
+            // e.g. file cannot be mapped: nobody else would close the channel
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return number of bytes decoded so far
+     */
+    public long getPosition() {
+        return windowStart + window.position();
+    }
+
+    private void map(long position) throws IOException {
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, fileSize - position));
+    }
+
+    /**
+     * Make sure at least 4 bytes (i.e. a whole UTF-8 sequence) are available in the window,
+     * unless end of file is reached
+     */
+    private void ensureSequence() throws IOException {
+        if (window.remaining() < 4 && windowStart + window.limit() < fileSize) {
+            map(windowStart + window.position());
+        }
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        long start = stats.isEnabled() ? getPosition() : 0;
+        int n = 0;
+        if (pendingLowSurrogate != 0) {
+            cbuf[off + n++] = pendingLowSurrogate;
+            pendingLowSurrogate = 0;
+        }
+        while (n < len) {
+            ensureSequence();
+            int pos = window.position();
+            int limit = window.limit();
+            if (pos >= limit) {
+                break;
+            }
+            // ASCII fast path
+            byte b;
+            while (n < len && pos < limit && (b = window.get(pos)) >= 0) {
+                cbuf[off + n++] = (char) b;
+                ++pos;
+            }
+            window.position(pos);
+            if (n < len && pos < limit && window.get(pos) < 0) {
+                ensureSequence();
+                n += decodeSequence(cbuf, off + n, len - n);
+            }
+        }
+        if (stats.isEnabled()) {
+            stats.addBytesRead(getPosition() - start);
+        }
+        return n == 0 ? -1 : n;
+    }
+
+    /**
+     * Decode a multi-byte sequence at current window position
+     *
+     * @return number of chars written, i.e. 1 or 2
+     */
+    private int decodeSequence(char[] cbuf, int off, int len) {
+        int pos = window.position();
+        int limit = window.limit();
+        int b0 = window.get(pos) & 0xFF;
+        int length;
+        int min2 = 0x80;
+        int max2 = 0xBF;
+        if (b0 >= 0xC2 && b0 <= 0xDF) {
+            length = 2;
+        } else if (b0 >= 0xE0 && b0 <= 0xEF) {
+            length = 3;
+            if (b0 == 0xE0) {
+                min2 = 0xA0; // overlong
+            } else if (b0 == 0xED) {
+                max2 = 0x9F; // surrogates
+            }
+        } else if (b0 >= 0xF0 && b0 <= 0xF4) {
+            length = 4;
+            if (b0 == 0xF0) {
+                min2 = 0x90; // overlong
+            } else if (b0 == 0xF4) {
+                max2 = 0x8F; // above U+10FFFF
+            }
+        } else {
+            window.position(pos + 1);
+            cbuf[off] = REPLACEMENT;
+            return 1;
+        }
+        int cp = b0 & (0xFF >> (length + 1));
+        for (int i = 1; i < length; ++i) {
+            int b = pos + i < limit ? window.get(pos + i) & 0xFF : -1;
+            boolean valid = i == 1 ? b >= min2 && b <= max2 : b >= 0x80 && b <= 0xBF;
+            if (!valid) {
+                // replace the maximal valid subpart
+                window.position(pos + i);
+                cbuf[off] = REPLACEMENT;
+                return 1;
+            }
+            cp = (cp << 6) | (b & 0x3F);
+        }
+        window.position(pos + length);
+        if (cp < 0x10000) {
+            cbuf[off] = (char) cp;
+            return 1;
+        }
+        cbuf[off] = Character.highSurrogate(cp);
+        if (len > 1) {
+            cbuf[off + 1] = Character.lowSurrogate(cp);
+            return 2;
+        }
+        pendingLowSurrogate = Character.lowSurrogate(cp);
+        return 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,49 @@
+package it.json2csv;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * InputStream adding the number of bytes read to RunStats
+ */
+public class MeteredInputStream extends FilterInputStream {
+
+    private final RunStats stats;
+
+    public MeteredInputStream(InputStream in, RunStats stats) {
+        super(in);
+        this.stats = stats;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            stats.addBytesRead(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            stats.addBytesRead(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        stats.addBytesRead(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        // marks would make bytes counted twice
+        return false;
+    }
+}
@@ -0,0 +1,192 @@
+package it.json2csv;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+
+/**
+ * Thread safe formatter of numbers, built on a NumberFormat.
+ *
+ * NumberFormat is not thread safe, so each thread uses its own clone of it.
+ * Most common patterns, i.e. a DecimalFormat with grouping and a fixed or
+ * limited number of decimals, and no prefix, suffix or exponent, are formatted
+ * directly, with the same result of DecimalFormat.
+ */
+public class NumberFormatter {
+
+    /**
+     * Max number of integer and fraction digits DecimalFormat uses for doubles
+     */
+    private static final int MAX_DIGITS = 309;
+
+    private final NumberFormat prototype;
+
+    private final ThreadLocal<NumberFormat> numberFormats;
+
+    /** true if fast path can be used, fields below are only meaningful in this case */
+    private final boolean fast;
+    private int minIntegerDigits;
+    private int minFractionDigits;
+    private int maxFractionDigits;
+    private int groupingSize;
+    private char groupingSeparator;
+    private char decimalSeparator;
+    private String minus;
+
+    /**
+     * Constructor
+     *
+     * @param nf NumberFormat to be used, it is cloned and must not be modified
+     *           afterwards
+     */
+    public NumberFormatter(NumberFormat nf) {
+        if (nf == null)
+            throw new NullPointerException("given null NumberFormat");
+        this.prototype = (NumberFormat) nf.clone();
+        this.numberFormats = ThreadLocal.withInitial(() -> (NumberFormat) prototype.clone());
+        this.fast = initFastPath();
+    }
+
+    /**
+     * @return the NumberFormat this formatter is built on
+     */
+    public NumberFormat getNumberFormat() {
+        return (NumberFormat) prototype.clone();
+    }
+
+    /**
+     * @return true if numbers are formatted without using NumberFormat
+     */
+    boolean isFastPath() {
+        return fast;
+    }
+
+    private boolean initFastPath() {
+        if (!(prototype instanceof DecimalFormat)) {
+            return false;
+        }
+        DecimalFormat df = (DecimalFormat) prototype;
+        DecimalFormatSymbols symbols = df.getDecimalFormatSymbols();
+        String pattern = df.toPattern();
+        minus = String.valueOf(symbols.getMinusSign());
+        if (!df.getPositivePrefix().isEmpty() || !df.getPositiveSuffix().isEmpty()
+                || !df.getNegativePrefix().equals(minus) || !df.getNegativeSuffix().isEmpty()
+                || df.getMultiplier() != 1 || df.isDecimalSeparatorAlwaysShown()
+                || df.getRoundingMode() != RoundingMode.HALF_EVEN
+                || symbols.getZeroDigit() != '0' || pattern.indexOf('E') >= 0
+                || df.getMaximumIntegerDigits() < MAX_DIGITS
+                || df.getMaximumFractionDigits() > MAX_DIGITS) {
+            return false;
+        }
+        minIntegerDigits = df.getMinimumIntegerDigits();
+        minFractionDigits = df.getMinimumFractionDigits();
+        maxFractionDigits = df.getMaximumFractionDigits();
+        groupingSize = df.isGroupingUsed() ? df.getGroupingSize() : 0;
+        groupingSeparator = symbols.getGroupingSeparator();
+        decimalSeparator = symbols.getDecimalSeparator();
+        return true;
+    }
+
+    /**
+     * Format given number, same as NumberFormat.format()
+     */
+    public String format(Number x) {
+        if (fast) {
+            String s = fastFormat(x);
+            if (s != null) {
+                return s;
+            }
+        }
+        return numberFormats.get().format(x);
+    }
+
+    /**
+     * @return formatted number, or null if fast path cannot handle given number
+     */
+    private String fastFormat(Number x) {
+        BigDecimal value;
+        boolean negative;
+        if (x instanceof Double || x instanceof Float) {
+            double d = x.doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                return null;
+            }
+            // DecimalFormat uses shortest representation digits, and rounds them as the exact value
+            value = new BigDecimal(Double.toString(d));
+            if (value.scale() > maxFractionDigits) {
+                value = new BigDecimal(d);
+            }
+            negative = d < 0 || (d == 0 && 1 / d < 0);
+        } else if (x instanceof Long || x instanceof Integer || x instanceof Short || x instanceof Byte) {
+            value = BigDecimal.valueOf(x.longValue());
+            negative = value.signum() < 0;
+        } else if (x instanceof BigDecimal) {
+            value = (BigDecimal) x;
+            negative = value.signum() < 0;
+        } else if (x instanceof BigInteger) {
+            value = new BigDecimal((BigInteger) x);
+            negative = value.signum() < 0;
+        } else {
+            return null;
+        }
+        value = value.abs();
+        if (value.scale() > maxFractionDigits) {
+            value = value.setScale(maxFractionDigits, RoundingMode.HALF_EVEN);
+        }
+        if (value.scale() > minFractionDigits) {
+            value = value.stripTrailingZeros();
+            if (value.scale() < minFractionDigits) {
+                value = value.setScale(minFractionDigits);
+            }
+        } else if (value.scale() < minFractionDigits) {
+            value = value.setScale(minFractionDigits);
+        }
+
+        if (value.scale() < 0) {
+            value = value.setScale(0);
+        }
+
+        String digits = value.unscaledValue().toString();
+        int fracLength = value.scale();
+        int intLength = digits.length() - fracLength;
+        if (intLength > MAX_DIGITS) {
+            return null;
+        }
+
+        StringBuilder sb = new StringBuilder(digits.length() + minIntegerDigits + 16);
+        if (negative) {
+            sb.append(minus);
+        }
+        // integer part, with leading zeros and grouping
+        String intDigits = intLength > 0 ? digits.substring(0, intLength) : "";
+        if (intDigits.equals("0")) {
+            intDigits = "";
+        }
+        int totalIntDigits = Math.max(intDigits.length(), minIntegerDigits);
+        if (totalIntDigits == 0 && fracLength == 0) {
+            // DecimalFormat prints at least one digit
+            totalIntDigits = 1;
+        }
+        int leadingZeros = totalIntDigits - intDigits.length();
+        for (int i = 0; i < totalIntDigits; ++i) {
+            sb.append(i < leadingZeros ? '0' : intDigits.charAt(i - leadingZeros));
+            int remaining = totalIntDigits - i - 1;
+            if (groupingSize > 0 && remaining > 0 && remaining % groupingSize == 0) {
+                sb.append(groupingSeparator);
+            }
+        }
+        // fraction part
+        if (fracLength > 0) {
+            sb.append(decimalSeparator);
+            int zeros = fracLength - digits.length();
+            for (int i = 0; i < zeros; ++i) {
+                sb.append('0');
+            }
+            sb.append(digits, Math.max(digits.length() - fracLength, 0), digits.length());
+        }
+        return sb.toString();
+    }
+}
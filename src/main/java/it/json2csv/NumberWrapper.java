@@ -1,9 +1,10 @@
 package it.json2csv;
 
+import java.math.BigDecimal;
 import java.text.NumberFormat;
 
 /**
- * Immutable Number wrapper endowed with a NumberFormat that influences the
+ * Immutable Number wrapper endowed with a NumberFormatter that influences the
  * behaviour of toString()) method.
  */
 public class NumberWrapper extends Number {
@@ -14,20 +15,34 @@ public class NumberWrapper extends Number {
     private Number x;
 
     /**
-     * NumberFormat used to format this Number. Can be null.
+     * NumberFormatter used to format this Number. Can be null.
      */
-    private NumberFormat nf;
+    private NumberFormatter nf;
 
     /**
      * Constructor
      */
-    public NumberWrapper(Number x, NumberFormat nf) {
+    public NumberWrapper(Number x, NumberFormatter nf) {
         if (x == null)
             throw new NullPointerException("given null Number");
         this.x = x;
         this.nf = nf; // can be null
     }
 
+    /**
+     * Constructor. Prefer NumberWrapper(Number, NumberFormatter) when wrapping many numbers.
+     */
+    public NumberWrapper(Number x, NumberFormat nf) {
+        this(x, nf != null ? new NumberFormatter(nf) : null);
+    }
+
+    /**
+     * @return the wrapped Number
+     */
+    public Number getNumber() {
+        return x;
+    }
+
     @Override
     public byte byteValue() {
         return x.byteValue();
@@ -70,6 +85,14 @@ public class NumberWrapper extends Number {
      */
     @Override
     public String toString() {
-        return nf != null ? nf.format(x) : x.toString();
+        return nf != null ? nf.format(x) : toPlainString(x);
+    }
+
+    /**
+     * @return given number as text, never in scientific notation if BigDecimal: e.g. JSON
+     *         1.5e3 is 1500, not 1.5E+3
+     */
+    static String toPlainString(Number x) {
+        return x instanceof BigDecimal ? ((BigDecimal) x).toPlainString() : x.toString();
     }
 }
@@ -5,11 +5,87 @@ import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.zip.Deflater;
 
+import com.beust.jcommander.IParameterValidator;
 import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
 
 public class Options {
 
+  /**
+   * Max value of --threads, i.e. max parallelism of ForkJoinPool
+   */
+  public static final int MAX_THREADS = 0x7fff;
+
+  /**
+   * Validates --threads on the command line
+   */
+  public static class ThreadsValidator implements IParameterValidator {
+    @Override
+    public void validate(String name, String value) {
+      try {
+        checkThreads(Integer.parseInt(value));
+      } catch (NumberFormatException e) {
+        // reported by the converter of the parameter
+      }
+    }
+  }
+
+  /**
+   * @throws ParameterException unless given --threads is between 1 and MAX_THREADS
+   */
+  public static void checkThreads(int threads) {
+    if (threads < 1 || threads > MAX_THREADS) {
+      throw new ParameterException("Invalid --threads " + threads + ": must be between 1 and " + MAX_THREADS);
+    }
+  }
+
+  /**
+   * How columns are discovered in streaming mode
+   */
+  public enum HeaderDiscovery {
+    /** Columns of the first record */
+    FIRST,
+    /** Read input twice: first time only to collect columns */
+    SCAN,
+    /** Keep rows in a temporary file until all columns are known */
+    SPILL
+  }
+
+  /**
+   * Class used to write CSV
+   */
+  public enum Emitter {
+    /** commons-csv CSVPrinter */
+    COMMONS,
+    /** built-in CsvEmitter, same output */
+    FAST
+  }
+
+  /**
+   * Compression of output
+   */
+  public enum CompressionFormat {
+    NONE,
+    /** gzip format, as written by gzip */
+    GZIP,
+    /** zlib format, as written by java.util.zip.DeflaterOutputStream */
+    DEFLATE
+  }
+
+  /**
+   * What to do when a row limit is exceeded
+   */
+  public enum RowLimitPolicy {
+    /** Stop with an error */
+    FAIL,
+    /** Keep rows up to the limit */
+    TRUNCATE,
+    /** Drop the whole record; for --max-total-rows, same as TRUNCATE */
+    SKIP
+  }
+
   @Parameter( //
       names = { "-h", "--help" }, //
       help = true, //
@@ -156,14 +232,147 @@ public class Options {
   private List<String> oaa;
 
   @Parameter( //
-      description = "<input JSON files>", //
-      required = true, //
+      names = { "--stream" }, //
+      description = "Read input one record at a time and print rows as soon as they are ready, with bounded memory. Header is taken from the first record, unless --filter-columns is given.", //
+      required = false, //
+      order = 180 //
+  )
+  private boolean stream;
+
+  @Parameter( //
+      names = { "--header-discovery" }, //
+      description = "How columns are discovered in --stream mode: FIRST (columns of first record), SCAN (read input twice, first time only to collect columns), SPILL (keep rows in a temporary file until all columns are known). Default: FIRST, or SPILL when reading stdin without --stream", //
+      required = false, //
+      order = 190 //
+  )
+  private HeaderDiscovery headerDiscovery;
+
+  @Parameter( //
+      names = { "--threads" }, //
+      description = "Number of threads used to read and flatten input files, elements of large root arrays, and ranges of large --jsonl files, in parallel. Output order is always the same as input order.", //
+      required = false, //
+      validateWith = ThreadsValidator.class, //
+      order = 200 //
+  )
+  private int threads = 1;
+
+  @Parameter( //
+      names = { "--max-rows-per-record" }, //
+      description = "Max number of rows generated by FULL JOIN from a single record, i.e. from the root node or from an element of the root array", //
+      required = false, //
+      order = 210 //
+  )
+  private Long maxRowsPerRecord;
+
+  @Parameter( //
+      names = { "--max-total-rows" }, //
+      description = "Max number of rows in output", //
+      required = false, //
+      order = 220 //
+  )
+  private Long maxTotalRows;
+
+  @Parameter( //
+      names = { "--row-limit-policy" }, //
+      description = "What to do when --max-rows-per-record or --max-total-rows is exceeded: FAIL (stop with an error), TRUNCATE (keep rows up to the limit), SKIP (drop records exceeding --max-rows-per-record, otherwise same as TRUNCATE)", //
+      required = false, //
+      order = 230 //
+  )
+  private RowLimitPolicy rowLimitPolicy = RowLimitPolicy.FAIL;
+
+  @Parameter( //
+      names = { "--buffer-size" }, //
+      description = "Size in bytes of output buffer", //
+      required = false, //
+      order = 240 //
+  )
+  private int bufferSize = OutputWriter.DEFAULT_BUFFER_SIZE;
+
+  @Parameter( //
+      names = { "--charset" }, //
+      description = "Charset of output, e.g. UTF-8, ISO-8859-1, windows-1252", //
+      required = false, //
+      order = 250 //
+  )
+  private String charset = "UTF-8";
+
+  @Parameter( //
+      names = { "--emitter" }, //
+      description = "CSV writer: COMMONS (commons-csv) or FAST (built-in, same output)", //
+      required = false, //
+      order = 260 //
+  )
+  private Emitter emitter = Emitter.COMMONS;
+
+  @Parameter( //
+      names = { "--mmap" }, //
+      description = "Read input files through memory mapping. Input files must be UTF-8.", //
+      required = false, //
+      order = 270 //
+  )
+  private boolean mmap;
+
+  @Parameter( //
+      names = { "--jsonl" }, //
+      description = "Input files are JSON Lines (NDJSON), i.e. one JSON value per line. Lines are treated as elements of a root array; --root is applied to each line.", //
+      required = false, //
+      order = 280 //
+  )
+  private boolean jsonl;
+
+  @Parameter( //
+      names = { "--compress" }, //
+      description = "Compress output: NONE, GZIP or DEFLATE (zlib). With more --threads, blocks are compressed in parallel. Compressed input is always detected automatically.", //
+      required = false, //
+      order = 290 //
+  )
+  private CompressionFormat compress = CompressionFormat.NONE;
+
+  @Parameter( //
+      names = { "--compression-level" }, //
+      description = "Compression level, from 0 (none) to 9 (best), or -1 for default", //
+      required = false, //
+      order = 300 //
+  )
+  private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+  @Parameter( //
+      names = { "--stats" }, //
+      description = "Print run statistics to stderr: time spent in each phase, bytes read, records, rows, FULL JOIN expansion factor, columns and peak heap", //
+      required = false, //
+      order = 310 //
+  )
+  private boolean stats = false;
+
+  @Parameter( //
+      names = { "--stats-file" }, //
+      description = "Write run statistics as JSON to given file, instead of stderr. Implies --stats", //
+      required = false, //
+      order = 320 //
+  )
+  private String statsFile;
+
+  @Parameter( //
+      names = { "--progress" }, //
+      description = "Report progress on stderr every second: bytes read out of total input size, rows, rows per second and estimated remaining time", //
+      required = false, //
+      order = 330 //
+  )
+  private boolean progress = false;
+
+  @Parameter( //
+      description = "<input JSON files, or - for stdin (default)>", //
+      required = false, //
       variableArity = true //
   )
   private List<String> files;
 
   private NumberFormat numberFormat;
+  private NumberFormatter numberFormatter;
   private Locale locale;
+  private List<JsonPath> excludePaths;
+  private JsonPath rootPath;
+  private List<JsonPath> oaaPaths;
 
   // ===== Getters and setters ===============================================
 
@@ -293,6 +502,7 @@ public class Options {
 
   public void setExclude(List<String> exclude) {
     this.exclude = exclude;
+    this.excludePaths = null;
   }
 
   public String getRoot() {
@@ -301,6 +511,7 @@ public class Options {
 
   public void setRoot(String root) {
     this.root = root;
+    this.rootPath = null;
   }
 
   public List<String> getOutputColumns() {
@@ -317,6 +528,142 @@ public class Options {
 
   public void setOaa(List<String> oaa) {
     this.oaa = oaa;
+    this.oaaPaths = null;
+  }
+
+  public boolean isStream() {
+    return stream;
+  }
+
+  public void setStream(boolean stream) {
+    this.stream = stream;
+  }
+
+  public HeaderDiscovery getHeaderDiscovery() {
+    return headerDiscovery == null ? HeaderDiscovery.FIRST : headerDiscovery;
+  }
+
+  /**
+   * @return true if --header-discovery was given, false if the default applies
+   */
+  public boolean isHeaderDiscoveryGiven() {
+    return headerDiscovery != null;
+  }
+
+  public void setHeaderDiscovery(HeaderDiscovery headerDiscovery) {
+    this.headerDiscovery = headerDiscovery;
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  public void setThreads(int threads) {
+    this.threads = threads;
+  }
+
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  public void setBufferSize(int bufferSize) {
+    this.bufferSize = bufferSize;
+  }
+
+  public String getCharset() {
+    return charset;
+  }
+
+  public void setCharset(String charset) {
+    this.charset = charset;
+  }
+
+  public Emitter getEmitter() {
+    return emitter;
+  }
+
+  public void setEmitter(Emitter emitter) {
+    this.emitter = emitter;
+  }
+
+  public boolean isMmap() {
+    return mmap;
+  }
+
+  public void setMmap(boolean mmap) {
+    this.mmap = mmap;
+  }
+
+  public boolean isJsonl() {
+    return jsonl;
+  }
+
+  public void setJsonl(boolean jsonl) {
+    this.jsonl = jsonl;
+  }
+
+  public CompressionFormat getCompress() {
+    return compress;
+  }
+
+  public void setCompress(CompressionFormat compress) {
+    this.compress = compress;
+  }
+
+  public int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  public void setCompressionLevel(int compressionLevel) {
+    this.compressionLevel = compressionLevel;
+  }
+
+  public boolean isStats() {
+    return stats;
+  }
+
+  public void setStats(boolean stats) {
+    this.stats = stats;
+  }
+
+  public String getStatsFile() {
+    return statsFile;
+  }
+
+  public void setStatsFile(String statsFile) {
+    this.statsFile = statsFile;
+  }
+
+  public boolean isProgress() {
+    return progress;
+  }
+
+  public void setProgress(boolean progress) {
+    this.progress = progress;
+  }
+
+  public Long getMaxRowsPerRecord() {
+    return maxRowsPerRecord;
+  }
+
+  public void setMaxRowsPerRecord(Long maxRowsPerRecord) {
+    this.maxRowsPerRecord = maxRowsPerRecord;
+  }
+
+  public Long getMaxTotalRows() {
+    return maxTotalRows;
+  }
+
+  public void setMaxTotalRows(Long maxTotalRows) {
+    this.maxTotalRows = maxTotalRows;
+  }
+
+  public RowLimitPolicy getRowLimitPolicy() {
+    return rowLimitPolicy;
+  }
+
+  public void setRowLimitPolicy(RowLimitPolicy rowLimitPolicy) {
+    this.rowLimitPolicy = rowLimitPolicy;
   }
 
   // ===== Other methods ===============================================
@@ -337,6 +684,57 @@ public class Options {
     return numberFormat;
   }
 
+  /**
+   * Return a thread safe NumberFormatter built on <code>getNumberFormat()</code>,
+   * or null if no number format was given
+   */
+  public NumberFormatter getNumberFormatter() {
+    if (numberFormatter == null && getNumberFormat() != null) {
+      numberFormatter = new NumberFormatter(getNumberFormat());
+    }
+    return numberFormatter;
+  }
+
+  /**
+   * Return <code>exclude</code> paths, parsed once
+   */
+  public List<JsonPath> getExcludePaths() {
+    if (excludePaths == null) {
+      excludePaths = parsePaths(exclude);
+    }
+    return excludePaths;
+  }
+
+  /**
+   * Return <code>root</code> path, parsed once; the empty path if no root was given
+   */
+  public JsonPath getRootPath() {
+    if (rootPath == null) {
+      rootPath = root == null || root.isBlank() ? JsonPath.EMPTY : JsonPath.parse(root);
+    }
+    return rootPath;
+  }
+
+  /**
+   * Return <code>oaa</code> paths, parsed once
+   */
+  public List<JsonPath> getOaaPaths() {
+    if (oaaPaths == null) {
+      oaaPaths = parsePaths(oaa);
+    }
+    return oaaPaths;
+  }
+
+  private static List<JsonPath> parsePaths(List<String> paths) {
+    List<JsonPath> result = new ArrayList<>();
+    if (paths != null) {
+      for (String path : paths) {
+        result.add(JsonPath.parse(path));
+      }
+    }
+    return result;
+  }
+
   /**
    * Return a Locale object built on <code>localeText</code>
    * 
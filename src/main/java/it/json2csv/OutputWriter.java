@@ -0,0 +1,291 @@
+package it.json2csv;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Buffered Writer on a file or on an OutputStream, with explicit charset.
+ *
+ * Characters are encoded into a large byte buffer, which is written to a
+ * channel only when full, so that the underlying stream is accessed (and locked,
+ * in case of System.out) once per buffer and not once per field. UTF-8,
+ * ISO-8859-1 and US-ASCII are encoded directly; other charsets use a
+ * CharsetEncoder.
+ * This class is not thread safe.
+ */
+public class OutputWriter extends Writer {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    /** enough for a surrogate pair in UTF-8, or any single char in any charset */
+    private static final int MIN_BUFFER_SIZE = 16;
+
+    private static final byte REPLACEMENT = '?';
+
+    private final WritableByteChannel channel;
+    private final OutputStream flushable;
+    private final boolean closeChannel;
+
+    private final ByteBuffer bytes;
+    private final byte[] array;
+
+    /** 0 for UTF-8, otherwise the greatest char that can be encoded as a single byte */
+    private final int maxSingleByteChar;
+
+    /** encoder and char buffer for charsets not handled directly, otherwise null */
+    private final CharsetEncoder encoder;
+    private final CharBuffer chars;
+
+    /** high surrogate at end of last write, waiting for the low surrogate */
+    private char pendingHighSurrogate = 0;
+
+    private boolean closed = false;
+
+    /**
+     * Writer on a file
+     */
+    public OutputWriter(String fileName, boolean append, Charset charset, int bufferSize) throws IOException {
+        this(new FileOutputStream(fileName, append).getChannel(), null, true, charset, bufferSize);
+    }
+
+    /**
+     * Writer on an OutputStream, e.g. System.out. The stream is flushed by flush(), but
+     * never closed.
+     */
+    public OutputWriter(OutputStream out, Charset charset, int bufferSize) {
+        this(out, false, charset, bufferSize);
+    }
+
+    /**
+     * Writer on an OutputStream, e.g. a compressing stream, which is closed by close()
+     * if closeStream is true
+     */
+    public OutputWriter(OutputStream out, boolean closeStream, Charset charset, int bufferSize) {
+        this(Channels.newChannel(out), out, closeStream, charset, bufferSize);
+    }
+
+    private OutputWriter(WritableByteChannel channel, OutputStream flushable, boolean closeChannel, Charset charset,
+            int bufferSize) {
+        this.channel = channel;
+        this.flushable = flushable;
+        this.closeChannel = closeChannel;
+        this.bytes = ByteBuffer.allocate(Math.max(bufferSize, MIN_BUFFER_SIZE));
+        this.array = bytes.array();
+        if (charset.equals(StandardCharsets.UTF_8)) {
+            maxSingleByteChar = 0;
+        } else if (charset.equals(StandardCharsets.ISO_8859_1)) {
+            maxSingleByteChar = 0xFF;
+        } else if (charset.equals(StandardCharsets.US_ASCII)) {
+            maxSingleByteChar = 0x7F;
+        } else {
+            maxSingleByteChar = -1;
+        }
+        if (maxSingleByteChar < 0) {
+            encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            chars = CharBuffer.allocate(bytes.capacity());
+        } else {
+            encoder = null;
+            chars = null;
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        put((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        for (int i = off; i < off + len; ++i) {
+            put(cbuf[i]);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        for (int i = off; i < off + len; ++i) {
+            put(str.charAt(i));
+        }
+    }
+
+    @Override
+    public Writer append(CharSequence csq) throws IOException {
+        if (csq == null) {
+            csq = "null";
+        }
+        return append(csq, 0, csq.length());
+    }
+
+    @Override
+    public Writer append(CharSequence csq, int start, int end) throws IOException {
+        if (csq == null) {
+            csq = "null";
+        }
+        for (int i = start; i < end; ++i) {
+            put(csq.charAt(i));
+        }
+        return this;
+    }
+
+    @Override
+    public Writer append(char c) throws IOException {
+        put(c);
+        return this;
+    }
+
+    private void put(char c) throws IOException {
+        if (encoder != null) {
+            if (!chars.hasRemaining()) {
+                encodeChars(false);
+            }
+            chars.put(c);
+        } else if (maxSingleByteChar > 0) {
+            if (!bytes.hasRemaining()) {
+                flushBuffer();
+            }
+            if (c <= maxSingleByteChar) {
+                bytes.put((byte) c);
+                pendingHighSurrogate = 0;
+            } else if (Character.isLowSurrogate(c) && pendingHighSurrogate != 0) {
+                // a surrogate pair is replaced by a single char
+                pendingHighSurrogate = 0;
+            } else {
+                bytes.put(REPLACEMENT);
+                pendingHighSurrogate = Character.isHighSurrogate(c) ? c : 0;
+            }
+        } else if (c < 0x80 && pendingHighSurrogate == 0) {
+            if (!bytes.hasRemaining()) {
+                flushBuffer();
+            }
+            bytes.put((byte) c);
+        } else {
+            putUtf8(c);
+        }
+    }
+
+    private void putUtf8(char c) throws IOException {
+        if (bytes.remaining() < 4) {
+            flushBuffer();
+        }
+        int pos = bytes.position();
+        if (pendingHighSurrogate != 0) {
+            char high = pendingHighSurrogate;
+            pendingHighSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int cp = Character.toCodePoint(high, c);
+                array[pos++] = (byte) (0xF0 | (cp >> 18));
+                array[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                array[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                array[pos++] = (byte) (0x80 | (cp & 0x3F));
+                bytes.position(pos);
+                return;
+            }
+            // unpaired high surrogate
+            array[pos++] = REPLACEMENT;
+            bytes.position(pos);
+            put(c);
+            return;
+        }
+        if (c < 0x80) {
+            array[pos++] = (byte) c;
+        } else if (c < 0x800) {
+            array[pos++] = (byte) (0xC0 | (c >> 6));
+            array[pos++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            pendingHighSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            // unpaired low surrogate
+            array[pos++] = REPLACEMENT;
+        } else {
+            array[pos++] = (byte) (0xE0 | (c >> 12));
+            array[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            array[pos++] = (byte) (0x80 | (c & 0x3F));
+        }
+        bytes.position(pos);
+    }
+
+    /**
+     * Encode pending chars into the byte buffer, writing it whenever full
+     */
+    private void encodeChars(boolean endOfInput) throws IOException {
+        chars.flip();
+        while (true) {
+            CoderResult result = encoder.encode(chars, bytes, endOfInput);
+            if (result.isOverflow()) {
+                flushBuffer();
+            } else {
+                break;
+            }
+        }
+        if (endOfInput) {
+            while (encoder.flush(bytes).isOverflow()) {
+                flushBuffer();
+            }
+            encoder.reset();
+        }
+        chars.compact();
+    }
+
+    /**
+     * Write the byte buffer to the channel
+     */
+    private void flushBuffer() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (closed) {
+            return;
+        }
+        if (encoder != null) {
+            encodeChars(false);
+        }
+        flushBuffer();
+        if (flushable != null) {
+            flushable.flush();
+        }
+    }
+
+    /**
+     * Write all pending chars; the underlying channel is closed only if it was opened
+     * by this Writer
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (encoder != null) {
+                encodeChars(true);
+            } else if (maxSingleByteChar == 0 && pendingHighSurrogate != 0) {
+                pendingHighSurrogate = 0;
+                put((char) REPLACEMENT);
+            }
+            flush();
+        } finally {
+            closed = true;
+            if (closeChannel) {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package it.json2csv;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import java.util.zip.Deflater;
+
+import it.json2csv.Options.CompressionFormat;
+
+/**
+ * OutputStream compressing data in gzip or zlib format, using many threads (as pigz does).
+ *
+ * Data is split into blocks, each block is compressed by a separate Deflater, using
+ * the tail of the previous block as dictionary, and flushed at a byte boundary, so
+ * that compressed blocks can be concatenated into a single deflate stream. The
+ * checksum is computed sequentially, while blocks are written.
+ * This class is not thread safe.
+ */
+public class ParallelDeflaterOutputStream extends FilterOutputStream {
+
+    static final int BLOCK_SIZE = 1 << 17;
+
+    private static final int DICTIONARY_SIZE = 1 << 15;
+
+    private final CompressionFormat format;
+    private final int level;
+    private final int threads;
+    private final ExecutorService executor;
+    private final Checksum checksum;
+
+    /** compressed blocks, in order, not yet written */
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int blockLength = 0;
+    private byte[] previousBlock = null;
+    private int previousBlockLength = 0;
+    private long totalLength = 0;
+    private boolean closed = false;
+
+    /**
+     * Constructor
+     *
+     * @param format  GZIP or DEFLATE (zlib)
+     * @param level   compression level, 0-9, or -1 for default
+     * @param threads number of compressing threads
+     */
+    public ParallelDeflaterOutputStream(OutputStream out, CompressionFormat format, int level, int threads)
+            throws IOException {
+        super(out);
+        if (format != CompressionFormat.GZIP && format != CompressionFormat.DEFLATE) {
+            throw new IllegalArgumentException("Unsupported compression format " + format);
+        }
+        this.format = format;
+        this.level = level;
+        this.threads = Math.max(threads, 1);
+        this.executor = Executors.newFixedThreadPool(this.threads, r -> {
+            Thread thread = new Thread(r, "json2csv-deflater");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.checksum = format == CompressionFormat.GZIP ? new CRC32() : new Adler32();
+        writeHeader();
+    }
+
+    private void writeHeader() throws IOException {
+        if (format == CompressionFormat.GZIP) {
+            // magic, CM = deflate, no flags, no mtime, no extra flags, OS unknown
+            out.write(new byte[] { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff });
+        } else {
+            int cmf = 0x78;
+            int flevel = level == Deflater.DEFAULT_COMPRESSION ? 2 : level < 2 ? 0 : level < 6 ? 1 : level == 6 ? 2 : 3;
+            int flg = flevel << 6;
+            flg += 31 - ((cmf << 8) + flg) % 31;
+            out.write(cmf);
+            out.write(flg);
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        block[blockLength++] = (byte) b;
+        if (blockLength == BLOCK_SIZE) {
+            submitBlock(false);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, BLOCK_SIZE - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+            if (blockLength == BLOCK_SIZE) {
+                submitBlock(false);
+            }
+        }
+    }
+
+    private void submitBlock(boolean last) throws IOException {
+        final byte[] data = block;
+        final int length = blockLength;
+        final byte[] dictionary = previousBlock;
+        final int dictionaryLength = previousBlockLength;
+        checksum.update(data, 0, length);
+        totalLength += length;
+        pending.add(executor.submit(() -> deflate(data, length, dictionary, dictionaryLength, last)));
+
+        previousBlock = data;
+        previousBlockLength = length;
+        block = new byte[BLOCK_SIZE];
+        blockLength = 0;
+
+        // bound memory, by waiting for the oldest blocks
+        while (pending.size() > 2 * threads) {
+            writeFirstPending();
+        }
+    }
+
+    private byte[] deflate(byte[] data, int length, byte[] dictionary, int dictionaryLength, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionary != null) {
+                int n = Math.min(DICTIONARY_SIZE, dictionaryLength);
+                deflater.setDictionary(dictionary, dictionaryLength - n, n);
+            }
+            deflater.setInput(data, 0, length);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+            byte[] buffer = new byte[1 << 16];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(buffer);
+                    compressed.write(buffer, 0, n);
+                }
+            } else {
+                int n;
+                do {
+                    n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    compressed.write(buffer, 0, n);
+                } while (n == buffer.length);
+            }
+            return compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void writeFirstPending() throws IOException {
+        Future<byte[]> future = pending.removeFirst();
+        try {
+            out.write(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch (ExecutionException e) {
+            throw new IOException("Error while compressing", e.getCause());
+        }
+    }
+
+    /**
+     * Write all blocks compressed so far. Data not filling a whole block is not flushed.
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!pending.isEmpty() && pending.peekFirst().isDone()) {
+            writeFirstPending();
+        }
+        out.flush();
+    }
+
+    /**
+     * Compress remaining data, write trailer, and close the underlying stream
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            submitBlock(true);
+            while (!pending.isEmpty()) {
+                writeFirstPending();
+            }
+            writeTrailer();
+            out.flush();
+        } finally {
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    private void writeTrailer() throws IOException {
+        long value = checksum.getValue();
+        if (format == CompressionFormat.GZIP) {
+            writeIntLE(value);
+            writeIntLE(totalLength);
+        } else {
+            out.write((int) (value >>> 24) & 0xff);
+            out.write((int) (value >>> 16) & 0xff);
+            out.write((int) (value >>> 8) & 0xff);
+            out.write((int) value & 0xff);
+        }
+    }
+
+    private void writeIntLE(long value) throws IOException {
+        out.write((int) value & 0xff);
+        out.write((int) (value >>> 8) & 0xff);
+        out.write((int) (value >>> 16) & 0xff);
+        out.write((int) (value >>> 24) & 0xff);
+    }
+}
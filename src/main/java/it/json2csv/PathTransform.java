@@ -0,0 +1,319 @@
+package it.json2csv;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonBuilderFactory;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
+
+/**
+ * --exclude and --oaa paths, compiled into a trie and applied to a JSON tree in a single
+ * traversal.
+ *
+ * Only nodes along the given paths are rebuilt; all other subtrees are shared with the
+ * input, which is immutable. The result is the same of applying JsonUtil.removeNode() for
+ * each exclude path, then JsonUtil.oaa() for each oaa path: deeper paths are applied first,
+ * and an oaa path falling under a previous oaa path (so that it refers to the converted
+ * structure) starts a new traversal. Array indexes always refer to the input, even if a
+ * previous element is excluded.
+ * This class is thread safe.
+ */
+public class PathTransform {
+
+    // FIXME: name clash possible
+    static final String NAME_KEY = "_key_";
+    static final String VALUE_KEY = "value";
+
+    private static final String STAR = JsonPath.WILDCARD;
+
+    private static final JsonBuilderFactory FACTORY = Json.createBuilderFactory(null);
+
+    /**
+     * Node of the trie. Children are looked up by key for objects, or by index (or *) for
+     * arrays.
+     */
+    static class Node {
+        final Map<String, Node> children = new LinkedHashMap<>();
+        boolean exclude;
+        boolean oaa;
+
+        /**
+         * Children other than *, merged with * so that each of them applies to an array
+         * element on its own; and their keys as array indexes (null if not a number)
+         */
+        Node[] indexedChildren;
+        Integer[] indexes;
+        boolean validIndexes;
+
+        Node child(String id) {
+            return children.computeIfAbsent(id, k -> new Node());
+        }
+
+        Node merge(Node other) {
+            exclude |= other.exclude;
+            oaa |= other.oaa;
+            for (Entry<String, Node> entry : other.children.entrySet()) {
+                child(entry.getKey()).merge(entry.getValue());
+            }
+            return this;
+        }
+
+        void compile() {
+            Node star = children.get(STAR);
+            List<Node> nodes = new ArrayList<>();
+            List<Integer> ints = new ArrayList<>();
+            validIndexes = true;
+            for (Entry<String, Node> entry : children.entrySet()) {
+                Node child = entry.getValue();
+                child.compile();
+                if (!STAR.equals(entry.getKey())) {
+                    if (star != null) {
+                        child = new Node().merge(child).merge(star);
+                        child.compile();
+                    }
+                    Integer index = parseIndex(entry.getKey());
+                    validIndexes &= index != null;
+                    nodes.add(child);
+                    ints.add(index);
+                }
+            }
+            indexedChildren = nodes.toArray(new Node[0]);
+            indexes = ints.toArray(new Integer[0]);
+        }
+
+        private static Integer parseIndex(String id) {
+            try {
+                return Integer.valueOf(id);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        /**
+         * @throws NumberFormatException if some child cannot be an array index
+         */
+        void checkIndexes() {
+            if (!validIndexes) {
+                for (String id : children.keySet()) {
+                    if (!STAR.equals(id)) {
+                        Integer.valueOf(id);
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return the node to be applied to given array element, or null
+         */
+        Node forIndex(int index) {
+            for (int i = 0; i < indexes.length; ++i) {
+                if (indexes[i] == index) {
+                    return indexedChildren[i];
+                }
+            }
+            return children.get(STAR);
+        }
+
+        /**
+         * Same as forIndex(), however keys that are not numbers are ignored instead of
+         * being an error
+         */
+        Node forIndexIfValid(int index) {
+            return validIndexes ? forIndex(index) : children.get(STAR);
+        }
+    }
+
+    /** one trie per traversal, applied in order */
+    private final List<Node> passes = new ArrayList<>();
+
+    /** oaa paths of the last pass */
+    private final List<List<String>> lastPassOaa = new ArrayList<>();
+
+    private final JsonUtil jsonUtil;
+
+    private boolean hasExcludes = false;
+
+    public PathTransform(List<JsonPath> excludePaths, List<JsonPath> oaaPaths, JsonUtil jsonUtil) {
+        this.jsonUtil = jsonUtil;
+        Node first = new Node();
+        passes.add(first);
+        if (excludePaths != null) {
+            for (JsonPath path : excludePaths) {
+                if (!path.isEmpty()) {
+                    add(first, path.getSegments()).exclude = true;
+                    hasExcludes = true;
+                }
+            }
+        }
+        if (oaaPaths != null) {
+            for (JsonPath path : oaaPaths) {
+                List<String> ids = path.getSegments();
+                for (List<String> previous : lastPassOaa) {
+                    if (isUnder(ids, previous)) {
+                        passes.add(new Node());
+                        lastPassOaa.clear();
+                        break;
+                    }
+                }
+                add(passes.get(passes.size() - 1), ids).oaa = true;
+                lastPassOaa.add(ids);
+            }
+        }
+        lastPassOaa.clear();
+        for (Node pass : passes) {
+            pass.compile();
+        }
+    }
+
+    private static Node add(Node root, List<String> ids) {
+        Node node = root;
+        for (String id : ids) {
+            node = node.child(id);
+        }
+        return node;
+    }
+
+    /**
+     * @return true if path may denote a node strictly inside the node denoted by prefix
+     */
+    private static boolean isUnder(List<String> path, List<String> prefix) {
+        if (path.size() <= prefix.size()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.size(); ++i) {
+            String a = path.get(i);
+            String b = prefix.get(i);
+            if (!a.equals(b) && !STAR.equals(a) && !STAR.equals(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the trie of exclude paths (together with the oaa paths applied in the same
+     *         traversal), or null if there are no exclude paths
+     */
+    Node getExcludes() {
+        return hasExcludes ? passes.get(0) : null;
+    }
+
+    /**
+     * @return true if there is nothing to apply
+     */
+    public boolean isEmpty() {
+        for (Node pass : passes) {
+            if (pass.exclude || pass.oaa || !pass.children.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Apply all paths to given JSON (root node already extracted)
+     */
+    public JsonValue apply(JsonValue data) {
+        if (data == null) {
+            return null;
+        }
+        for (Node pass : passes) {
+            data = apply(data, pass);
+        }
+        return data;
+    }
+
+    /**
+     * Apply all paths to a single element of the root array. Paths are relative to the
+     * root node, so their first identifier must be the index of the element (or *).
+     *
+     * @return modified element, or null if the whole element is excluded
+     */
+    public JsonValue applyToElement(JsonValue element, int index) {
+        for (Node pass : passes) {
+            pass.checkIndexes();
+            element = applyToElement(element, index, pass);
+            if (element == null) {
+                return null;
+            }
+        }
+        return element;
+    }
+
+    private JsonValue applyToElement(JsonValue element, int index, Node node) {
+        Node child = node.forIndex(index);
+        if (child == null) {
+            return element;
+        }
+        return child.exclude ? null : apply(element, child);
+    }
+
+    /**
+     * Apply the subtree of given node to a value; value is not excluded itself
+     */
+    private JsonValue apply(JsonValue value, Node node) {
+        if (!node.children.isEmpty()) {
+            if (value instanceof JsonObject) {
+                value = applyToObject((JsonObject) value, node);
+            } else if (value instanceof JsonArray) {
+                value = applyToArray((JsonArray) value, node);
+            } else {
+                throw new IllegalArgumentException("nodePath " + node.children.keySet() + " expects Object or Array");
+            }
+        }
+        if (node.oaa) {
+            if (value instanceof JsonObject) {
+                value = jsonUtil.convertObjectToArray((JsonObject) value, NAME_KEY, VALUE_KEY);
+            } else if (!(value instanceof JsonArray) && value.getValueType() != JsonValue.ValueType.NULL) {
+                throw new IllegalArgumentException("object-as-array nodePath expects Object or Array");
+            }
+        }
+        return value;
+    }
+
+    private JsonValue applyToObject(JsonObject object, Node node) {
+        boolean changed = false;
+        for (String key : node.children.keySet()) {
+            if (object.containsKey(key)) {
+                changed = true;
+                break;
+            }
+        }
+        if (!changed) {
+            return object;
+        }
+        JsonObjectBuilder builder = FACTORY.createObjectBuilder();
+        for (Entry<String, JsonValue> entry : object.entrySet()) {
+            Node child = node.children.get(entry.getKey());
+            if (child == null) {
+                builder.add(entry.getKey(), entry.getValue());
+            } else if (!child.exclude) {
+                builder.add(entry.getKey(), apply(entry.getValue(), child));
+            }
+        }
+        return builder.build();
+    }
+
+    private JsonValue applyToArray(JsonArray array, Node node) {
+        node.checkIndexes();
+        JsonArrayBuilder builder = FACTORY.createArrayBuilder();
+        boolean changed = false;
+        for (int i = 0; i < array.size(); ++i) {
+            JsonValue element = array.get(i);
+            JsonValue transformed = applyToElement(element, i, node);
+            if (transformed != null) {
+                builder.add(transformed);
+            }
+            changed |= transformed != element;
+        }
+        return changed ? builder.build() : array;
+    }
+}
@@ -1,31 +1,173 @@
 package it.json2csv;
 
-import java.io.FileWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
 import java.util.List;
 
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+import it.json2csv.Options.CompressionFormat;
+import it.json2csv.Options.Emitter;
+import it.json2csv.RunStats.Phase;
 
 /**
  * Print data to CSV, either on file or on stdout
  */
-public class Printer {
+public class Printer implements Closeable {
 
     private Options options;
 
+    /**
+     * CSVPrinter or CsvEmitter, according to --emitter, created on first use
+     */
+    private CSVPrinter csvPrinter;
+    private CsvEmitter emitter;
+
+    /**
+     * Receives time spent printing, rows and columns
+     */
+    private RunStats stats = RunStats.DISABLED;
+
     public Printer(Options options) throws IOException {
         this.options = options;
     }
 
+    public RunStats getStats() {
+        return stats;
+    }
+
+    public void setStats(RunStats stats) {
+        this.stats = stats;
+    }
+
     public void printCSV(List<Object[]> dataAsListOfArrays, List<String> headers) throws IOException {
-        try (CSVPrinter printer = createCsvPrinter()) {
-            if (!options.isSkipHeader()) {
-                printer.printRecord(headers.toArray());
-            }
+        try {
+            printHeader(headers);
+            stats.beginPrint(dataAsListOfArrays.size());
+            long start = stats.start();
             for (Object[] row : dataAsListOfArrays) {
-                printer.printRecord(row);
+                writeRow(row);
+                stats.addRow();
+            }
+            stats.stop(Phase.PRINT, start);
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Same as printCSV(List, List), reading rows from a RowBuffer
+     */
+    public void printCSV(RowBuffer buffer, List<String> headers) throws IOException {
+        try {
+            printHeader(headers);
+            stats.beginPrint(buffer.size());
+            long start = stats.start();
+            if (options.getEmitter() == Emitter.FAST) {
+                CsvEmitter emitter = getEmitter();
+                for (int i = 0; i < buffer.size(); ++i) {
+                    emitter.printRecord(buffer, i, headers.size());
+                    stats.addRow();
+                }
+            } else {
+                Object[] row = new Object[headers.size()];
+                for (int i = 0; i < buffer.size(); ++i) {
+                    writeRow(buffer.getRow(i, row));
+                    stats.addRow();
+                }
             }
+            stats.stop(Phase.PRINT, start);
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Print headers, unless --skip-header was given. Used when rows are printed one at a time.
+     */
+    public void printHeader(List<String> headers) throws IOException {
+        stats.setColumns(headers.size());
+        if (!options.isSkipHeader()) {
+            long start = stats.start();
+            writeRow(headers.toArray());
+            stats.stop(Phase.PRINT, start);
+        }
+    }
+
+    /**
+     * Print a single row. Used when rows are printed one at a time.
+     */
+    public void printRow(Object[] row) throws IOException {
+        long start = stats.start();
+        writeRow(row);
+        stats.stop(Phase.PRINT, start);
+        stats.addRow();
+    }
+
+    private void writeRow(Object[] row) throws IOException {
+        if (options.getEmitter() == Emitter.FAST) {
+            getEmitter().printRecord(row);
+        } else {
+            getCsvPrinter().printRecord(plainDecimals(row));
+        }
+    }
+
+    /**
+     * @return given row, or a copy of it where BigDecimal values are replaced by their plain
+     *         text, as CSVPrinter would print them in scientific notation
+     */
+    private static Object[] plainDecimals(Object[] row) {
+        Object[] result = row;
+        for (int i = 0; i < row.length; ++i) {
+            if (row[i] instanceof BigDecimal) {
+                if (result == row) {
+                    result = row.clone();
+                }
+                result[i] = ((BigDecimal) row[i]).toPlainString();
+            }
+        }
+        return result;
+    }
+
+    private CSVPrinter getCsvPrinter() throws IOException {
+        if (csvPrinter == null) {
+            csvPrinter = createCsvPrinter();
+        }
+        return csvPrinter;
+    }
+
+    private CsvEmitter getEmitter() throws IOException {
+        if (emitter == null) {
+            emitter = new CsvEmitter(createAppendable(), options, options.getNumberFormatter());
+        }
+        return emitter;
+    }
+
+    @Override
+    public void close() throws IOException {
+        long start = stats.start();
+        try {
+            closePrinters();
+        } finally {
+            stats.stop(Phase.PRINT, start);
+        }
+    }
+
+    private void closePrinters() throws IOException {
+        if (csvPrinter != null) {
+            csvPrinter.close();
+            csvPrinter = null;
+        }
+        if (emitter != null) {
+            emitter.close();
+            emitter = null;
         }
     }
 
@@ -35,11 +177,39 @@ public class Printer {
         return new CSVPrinter(appendable, format);
     }
 
-    Appendable createAppendable() throws IOException {
-        if (options.getOutput() == null || options.getOutput().trim().isEmpty()) {
-            return System.out;
+    /**
+     * @return a buffered Writer on output file or stdout, compressed according to
+     *         --compress. Closing it does not close stdout.
+     */
+    Writer createAppendable() throws IOException {
+        Charset charset = createCharset();
+        boolean stdout = options.getOutput() == null || options.getOutput().trim().isEmpty();
+        if (options.getCompress() != null && options.getCompress() != CompressionFormat.NONE) {
+            Compression.checkLevel(options.getCompressionLevel());
+            // appending to a gzip file adds a new member, which is still a valid gzip file
+            OutputStream out = stdout ? CloseShieldOutputStream.wrap(System.out)
+                    : new FileOutputStream(options.getOutput(), options.isAppend());
+            try {
+                out = Compression.compress(out, options.getCompress(), options.getCompressionLevel(),
+                        options.getBufferSize(), options.getThreads());
+            } catch (IOException e) {
+                out.close();
+                throw e;
+            }
+            return new OutputWriter(out, true, charset, options.getBufferSize());
+        }
+        if (stdout) {
+            return new OutputWriter(System.out, charset, options.getBufferSize());
         } else {
-            return new FileWriter(options.getOutput(), options.isAppend());
+            return new OutputWriter(options.getOutput(), options.isAppend(), charset, options.getBufferSize());
+        }
+    }
+
+    Charset createCharset() throws IOException {
+        try {
+            return Charset.forName(options.getCharset());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unsupported charset " + options.getCharset());
         }
     }
 
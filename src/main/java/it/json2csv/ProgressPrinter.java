@@ -0,0 +1,85 @@
+package it.json2csv;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * ConversionListener printing progress for --progress, once per progress interval: bytes
+ * read out of the total size of input, records and rows, rows per second, estimated
+ * remaining time.
+ *
+ * Counters are updated by the conversion threads and only read here, from the timer thread,
+ * so the conversion itself is not slowed down by printing.
+ */
+public class ProgressPrinter implements ConversionListener {
+
+    private final PrintStream out;
+    private final boolean overwrite;
+
+    /**
+     * Constructor
+     *
+     * @param out       usually stderr
+     * @param overwrite if true, each line overwrites the previous one, as on a terminal
+     */
+    public ProgressPrinter(PrintStream out, boolean overwrite) {
+        this.out = out;
+        this.overwrite = overwrite;
+    }
+
+    @Override
+    public synchronized void progress(ConversionProgress progress) {
+        if (overwrite) {
+            out.print("\r" + format(progress));
+            out.flush();
+        } else {
+            out.println(format(progress));
+        }
+    }
+
+    @Override
+    public synchronized void finished(ConversionProgress progress) {
+        if (overwrite) {
+            out.println("\r" + format(progress));
+        } else {
+            out.println(format(progress));
+        }
+    }
+
+    /**
+     * @return e.g. "Progress: 12.0 MB / 48.0 MB (25%), 1000 records, 5000 rows, 2500 rows/s, ETA 0:00:06"
+     */
+    static String format(ConversionProgress progress) {
+        StringBuilder sb = new StringBuilder("Progress: ");
+        sb.append(megabytes(progress.getBytesRead()));
+        long total = progress.getBytesTotal();
+        if (total >= 0) {
+            sb.append(" / ").append(megabytes(total));
+            if (total > 0) {
+                sb.append(" (").append(Math.min(100, progress.getBytesRead() * 100 / total)).append("%)");
+            }
+        }
+        sb.append(", ").append(progress.getRecords()).append(" records");
+        sb.append(", ").append(progress.getRowsWritten()).append(" rows");
+        sb.append(", ").append(Math.round(progress.getRowsPerSecond())).append(" rows/s");
+        if (progress.isRunning()) {
+            long eta = progress.getEtaMillis();
+            sb.append(", ETA ").append(eta < 0 ? "unknown" : duration(eta));
+        } else {
+            sb.append(", done in ").append(duration(progress.getElapsedMillis()));
+        }
+        return sb.toString();
+    }
+
+    private static String megabytes(long bytes) {
+        return String.format(Locale.ROOT, "%.1f MB", bytes / 1048576.0);
+    }
+
+    /**
+     * @return h:mm:ss
+     */
+    static String duration(long millis) {
+        long seconds = (millis + 500) / 1000;
+        return String.format(Locale.ROOT, "%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+}
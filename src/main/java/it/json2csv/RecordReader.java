@@ -0,0 +1,18 @@
+package it.json2csv;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+import javax.json.JsonValue;
+
+/**
+ * Source of JSON records, read one at a time
+ */
+public interface RecordReader extends Iterator<JsonValue>, Closeable {
+
+    /**
+     * @return true if records are elements of a root array, false if there is a single
+     *         record, i.e. the root node
+     */
+    boolean isRootArray();
+}
@@ -0,0 +1,222 @@
+package it.json2csv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact in-memory table of rows, used between flattening and printing.
+ *
+ * Each cell is stored as a type tag and a primitive value: booleans and nulls
+ * need no object at all, integers are stored as long, floating point numbers as
+ * raw double bits, strings, decimals and any other value are stored once in an
+ * object table and referenced by index.
+ * Rows are stored one after the other; trailing empty cells are not stored.
+ */
+public class RowBuffer {
+
+    // Cell types. These are also used in RowSpill files.
+    public static final byte NULL = 0;
+    public static final byte STRING = 1;
+    public static final byte TRUE = 2;
+    public static final byte FALSE = 3;
+    public static final byte NUMBER = 4;
+    public static final byte OTHER = 5;
+    public static final byte LONG = 6;
+    public static final byte DECIMAL = 7;
+
+    private final NumberFormatter nf;
+
+    private byte[] types = new byte[1024];
+    private long[] values = new long[1024];
+    private int cellCount = 0;
+
+    /** index of first cell of each row, plus one more element for the end of last row */
+    private int[] rowStarts = new int[] { 0, 0, 0, 0, 0, 0, 0, 0 };
+    private int rowCount = 0;
+
+    /** strings and other values */
+    private final List<Object> objects = new ArrayList<>();
+
+    /**
+     * Last object stored in each column, and its index in objects: FULL JOIN repeats the
+     * same instances in consecutive rows, and they are stored only once.
+     */
+    private Object[] lastObjects = new Object[0];
+    private int[] lastObjectIndexes = new int[0];
+
+    /**
+     * Constructor
+     *
+     * @param nf NumberFormatter used for numbers read back. Can be null.
+     */
+    public RowBuffer(NumberFormatter nf) {
+        this.nf = nf;
+    }
+
+    /**
+     * Append a row
+     */
+    public void addRow(Object[] row) {
+        int length = row.length;
+        while (length > 0 && row[length - 1] == null) {
+            --length;
+        }
+        ensureCellCapacity(cellCount + length);
+        if (length > lastObjects.length) {
+            lastObjects = Arrays.copyOf(lastObjects, length);
+            lastObjectIndexes = Arrays.copyOf(lastObjectIndexes, length);
+        }
+        for (int column = 0; column < length; ++column) {
+            Object value = row[column];
+            byte type;
+            long bits = 0;
+            if (value == null) {
+                type = NULL;
+            } else if (value instanceof Boolean) {
+                type = (Boolean) value ? TRUE : FALSE;
+            } else if (value instanceof Number) {
+                Number number = unwrap(value);
+                type = numberType(number);
+                if (type == LONG) {
+                    bits = number.longValue();
+                } else if (type == NUMBER) {
+                    bits = Double.doubleToRawLongBits(number.doubleValue());
+                } else {
+                    bits = objectIndex(column, number);
+                }
+            } else {
+                type = value instanceof String ? STRING : OTHER;
+                bits = objectIndex(column, value);
+            }
+            types[cellCount] = type;
+            values[cellCount] = bits;
+            ++cellCount;
+        }
+        if (rowCount + 2 > rowStarts.length) {
+            rowStarts = Arrays.copyOf(rowStarts, rowStarts.length * 2);
+        }
+        rowStarts[++rowCount] = cellCount;
+    }
+
+    /**
+     * @return the Number wrapped by a NumberWrapper, or the given value itself
+     */
+    static Number unwrap(Object value) {
+        return value instanceof NumberWrapper ? ((NumberWrapper) value).getNumber() : (Number) value;
+    }
+
+    /**
+     * @return LONG for integral types that fit a long, NUMBER for floating point
+     * types, DECIMAL for anything else (BigDecimal, BigInteger, ...)
+     */
+    static byte numberType(Number number) {
+        if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte) {
+            return LONG;
+        } else if (number instanceof Double || number instanceof Float) {
+            return NUMBER;
+        } else {
+            return DECIMAL;
+        }
+    }
+
+    private int objectIndex(int column, Object value) {
+        if (lastObjects[column] != value) {
+            lastObjects[column] = value;
+            lastObjectIndexes[column] = objects.size();
+            objects.add(value);
+        }
+        return lastObjectIndexes[column];
+    }
+
+    private void ensureCellCapacity(int capacity) {
+        if (capacity > types.length) {
+            int newLength = Math.max(capacity, types.length + (types.length >> 1));
+            types = Arrays.copyOf(types, newLength);
+            values = Arrays.copyOf(values, newLength);
+        }
+    }
+
+    /**
+     * @return number of rows
+     */
+    public int size() {
+        return rowCount;
+    }
+
+    /**
+     * @return number of stored cells of given row; further cells are null
+     */
+    public int width(int row) {
+        return rowStarts[row + 1] - rowStarts[row];
+    }
+
+    /**
+     * @return type of given cell, i.e. one of NULL, STRING, TRUE, FALSE, NUMBER, LONG, DECIMAL, OTHER
+     */
+    public byte type(int row, int column) {
+        return column < width(row) ? types[rowStarts[row] + column] : NULL;
+    }
+
+    /**
+     * @return value of a NUMBER cell
+     */
+    public double number(int row, int column) {
+        return Double.longBitsToDouble(values[rowStarts[row] + column]);
+    }
+
+    /**
+     * @return value of a LONG cell
+     */
+    public long longValue(int row, int column) {
+        return values[rowStarts[row] + column];
+    }
+
+    /**
+     * @return value of a STRING, DECIMAL or OTHER cell
+     */
+    public Object object(int row, int column) {
+        return objects.get((int) values[rowStarts[row] + column]);
+    }
+
+    /**
+     * Read back a row as objects
+     *
+     * @param target array to be filled, its length should be the number of columns
+     * @return target
+     */
+    public Object[] getRow(int row, Object[] target) {
+        int width = Math.min(width(row), target.length);
+        for (int column = 0; column < width; ++column) {
+            switch (type(row, column)) {
+                case TRUE:
+                    target[column] = Boolean.TRUE;
+                    break;
+                case FALSE:
+                    target[column] = Boolean.FALSE;
+                    break;
+                case NUMBER:
+                    target[column] = wrap(number(row, column));
+                    break;
+                case LONG:
+                    target[column] = wrap(longValue(row, column));
+                    break;
+                case DECIMAL:
+                    target[column] = wrap((Number) object(row, column));
+                    break;
+                case STRING:
+                case OTHER:
+                    target[column] = object(row, column);
+                    break;
+                default:
+                    target[column] = null;
+            }
+        }
+        Arrays.fill(target, width, target.length, null);
+        return target;
+    }
+
+    private Number wrap(Number number) {
+        return nf == null ? number : new NumberWrapper(number, nf);
+    }
+}
@@ -0,0 +1,146 @@
+package it.json2csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.json.JsonValue;
+
+/**
+ * Rows converted from a JSON source, see Converter.convert(). Rows are produced lazily:
+ * a record is read and flattened only when its rows are requested, so memory is bounded by
+ * the size of a single record, and input is consumed at the pace of the caller.
+ *
+ * Columns are those of --filter-columns, if given, otherwise those of the first record, as
+ * with --stream --header-discovery FIRST: columns found later are ignored with a warning.
+ * Each row has the same length as getColumns(); values are String, Boolean or Number,
+ * "" for JSON null, and null for columns missing in the row.
+ *
+ * --exclude, --oaa, --root, --max-depth and --filter-columns are those in effect when the
+ * iterator is created. With --row-limit-policy FAIL (the default), exceeding
+ * --max-rows-per-record or --max-total-rows makes hasNext() and next(), and so the stream,
+ * throw RowLimitException.
+ *
+ * This class is not thread safe. Close it, or the stream returned by stream(), to release
+ * the input.
+ */
+public class RowIterator implements Iterator<Object[]>, Closeable {
+
+    private final Converter converter;
+    private final RecordReader reader;
+    private final PathTransform transform;
+    private final Set<String> ignoredColumns = new HashSet<>();
+    private ColumnIndex columns;
+    private Iterator<LinkedHashMap<String, Object>> rows = Collections.emptyIterator();
+    private int index = 0;
+    private long rowCount = 0;
+    private boolean finished = false;
+
+    RowIterator(Converter converter, RecordReader reader, PathTransform transform) {
+        this.converter = converter;
+        this.reader = reader;
+        this.transform = transform;
+        List<String> outputColumns = converter.options.getOutputColumns();
+        if (outputColumns != null && !outputColumns.isEmpty()) {
+            columns = new ColumnIndex(outputColumns);
+        }
+    }
+
+    /**
+     * @return header of rows; the first record is read, unless columns are fixed by
+     *         --filter-columns
+     */
+    public List<String> getColumns() {
+        if (columns == null) {
+            List<LinkedHashMap<String, Object>> firstRows = new ArrayList<>();
+            if (nextRecord()) {
+                rows.forEachRemaining(firstRows::add);
+            }
+            LinkedHashSet<String> columnNames = new LinkedHashSet<>();
+            for (LinkedHashMap<String, Object> row : firstRows) {
+                columnNames.addAll(row.keySet());
+            }
+            columns = new ColumnIndex(new ArrayList<>(columnNames));
+            rows = firstRows.iterator();
+        }
+        return Collections.unmodifiableList(columns.getColumns());
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (finished) {
+            return false;
+        }
+        getColumns();
+        if (!nextRecord() || !converter.acceptRow(rowCount + 1)) {
+            finished = true;
+        }
+        return !finished;
+    }
+
+    @Override
+    public Object[] next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ++rowCount;
+        return converter.toArray(rows.next(), columns, ignoredColumns);
+    }
+
+    /**
+     * @return remaining rows as a sequential stream, closing this iterator when closed
+     */
+    public Stream<Object[]> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    /**
+     * Read records until one generating some row is found
+     *
+     * @return false at end of input
+     */
+    private boolean nextRecord() {
+        while (!rows.hasNext()) {
+            if (!reader.hasNext()) {
+                return false;
+            }
+            JsonValue data = reader.next();
+            if (reader.isRootArray()) {
+                data = transform.applyToElement(data, index);
+                if (data != null) {
+                    rows = converter.flattenRecord(data, 2, null, index);
+                }
+                ++index;
+            } else {
+                rows = converter.flattenRecord(transform.apply(data), 1, null, 0);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        reader.close();
+    }
+}
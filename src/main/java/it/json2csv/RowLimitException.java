@@ -0,0 +1,14 @@
+package it.json2csv;
+
+/**
+ * Thrown when --max-rows-per-record or --max-total-rows is exceeded, and
+ * --row-limit-policy is FAIL
+ */
+public class RowLimitException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RowLimitException(String message) {
+        super(message);
+    }
+}
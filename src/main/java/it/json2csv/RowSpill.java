@@ -0,0 +1,209 @@
+package it.json2csv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Temporary binary file holding flattened rows, so that they can be printed
+ * after all columns are known, without keeping them in memory.
+ *
+ * Each row is stored as a sequence of (column index, type tag, value) cells,
+ * using the type tags of RowBuffer; column names are stored only once, in memory.
+ */
+public class RowSpill implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final byte END_OF_ROW = 0;
+
+    /**
+     * Receives rows read back from the spill file
+     */
+    public interface RowConsumer {
+        void accept(Object[] row) throws IOException;
+    }
+
+    private final NumberFormatter nf;
+    private final File file;
+    private DataOutputStream out;
+    private final Map<String, Integer> columnIndexes = new HashMap<>();
+    private final List<String> columns = new ArrayList<>();
+    private long rowCount = 0;
+
+    /**
+     * Constructor. The temporary file is deleted by close(), not on exit, so that long-lived
+     * processes do not accumulate entries in the list of files to delete on exit.
+     *
+     * @param nf NumberFormatter used for numbers read back. Can be null.
+     */
+    public RowSpill(NumberFormatter nf) throws IOException {
+        this.nf = nf;
+        this.file = File.createTempFile("json2csv-", ".spill");
+        try {
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        } catch (IOException e) {
+            file.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Append a row to the spill file. New columns are appended to the list of columns.
+     */
+    public void write(Map<String, Object> row) throws IOException {
+        for (Map.Entry<String, Object> cell : row.entrySet()) {
+            Integer index = columnIndexes.get(cell.getKey());
+            if (index == null) {
+                index = columns.size();
+                columns.add(cell.getKey());
+                columnIndexes.put(cell.getKey(), index);
+            }
+            Object value = cell.getValue();
+            if (value == null) {
+                continue;
+            }
+            writeVarInt(index + 1);
+            if (value instanceof String) {
+                out.writeByte(RowBuffer.STRING);
+                writeString((String) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte((Boolean) value ? RowBuffer.TRUE : RowBuffer.FALSE);
+            } else if (value instanceof Number) {
+                Number number = RowBuffer.unwrap(value);
+                byte type = RowBuffer.numberType(number);
+                out.writeByte(type);
+                if (type == RowBuffer.LONG) {
+                    out.writeLong(number.longValue());
+                } else if (type == RowBuffer.NUMBER) {
+                    out.writeDouble(number.doubleValue());
+                } else {
+                    writeString(NumberWrapper.toPlainString(number));
+                }
+            } else {
+                out.writeByte(RowBuffer.OTHER);
+                writeString(value.toString());
+            }
+        }
+        out.writeByte(END_OF_ROW);
+        ++rowCount;
+    }
+
+    /**
+     * @return all columns seen so far, in order of appearance
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Read back all rows, in the same order they were written. Each row is
+     * arranged according to getColumns().
+     */
+    public void replay(RowConsumer consumer) throws IOException {
+        out.close();
+        out = null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+            for (long r = 0; r < rowCount; ++r) {
+                Object[] row = new Object[columns.size()];
+                int index;
+                while ((index = readVarInt(in)) != END_OF_ROW) {
+                    row[index - 1] = readValue(in);
+                }
+                consumer.accept(row);
+            }
+        }
+    }
+
+    private Object readValue(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case RowBuffer.STRING:
+            case RowBuffer.OTHER:
+                return readString(in);
+            case RowBuffer.TRUE:
+                return true;
+            case RowBuffer.FALSE:
+                return false;
+            case RowBuffer.NUMBER:
+                return wrap(in.readDouble());
+            case RowBuffer.LONG:
+                return wrap(in.readLong());
+            case RowBuffer.DECIMAL:
+                return wrap(new BigDecimal(readString(in)));
+            default:
+                throw new IOException("Corrupted spill file " + file + ": unexpected tag " + tag);
+        }
+    }
+
+    private Number wrap(Number number) {
+        return nf == null ? number : new NumberWrapper(number, nf);
+    }
+
+    private void writeString(String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void writeVarInt(int x) throws IOException {
+        while ((x & ~0x7F) != 0) {
+            out.writeByte((x & 0x7F) | 0x80);
+            x >>>= 7;
+        }
+        out.writeByte(x);
+    }
+
+    private int readVarInt(DataInputStream in) throws IOException {
+        int x = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated spill file " + file);
+            }
+            x |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return x;
+            }
+        }
+        throw new IOException("Corrupted spill file " + file);
+    }
+
+    /**
+     * Delete the spill file
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package it.json2csv;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.json.Json;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonWriter;
+import javax.json.stream.JsonGenerator;
+
+/**
+ * Statistics of a single run, for --stats: time spent in each phase, bytes read, records
+ * flattened, rows generated by FULL JOIN and printed, columns and peak heap.
+ *
+ * Phase times are wall times summed over all threads, so with --threads their sum may
+ * exceed the total time. Peak heap is the highest heap usage sampled during the run, see
+ * sampleHeap(): heap is shared by the whole JVM, so it includes memory used by anything
+ * else running at the same time, concurrent runs included. When disabled, nothing is measured and System.nanoTime() is
+ * never called; when not timed, only counters are updated, e.g. to report progress.
+ * This class is thread safe.
+ */
+public class RunStats {
+
+    public enum Phase {
+        /** reading and parsing input, including decompression */
+        PARSE,
+        /** --exclude and --oaa */
+        TRANSFORM,
+        /** JSON into rows, before FULL JOIN */
+        FLATTEN,
+        /** FULL JOIN among list attributes */
+        JOIN,
+        /** rows into arrays, in order of columns */
+        ARRANGE,
+        /** CSV formatting and output */
+        PRINT;
+
+        public String getLabel() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /** Measures nothing */
+    public static final RunStats DISABLED = new RunStats(false, false);
+
+    private final boolean enabled;
+    private final boolean timed;
+    private final LongAdder[] phaseNanos = new LongAdder[Phase.values().length];
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder joinRows = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private volatile int columns;
+    private volatile long rowsToPrint = -1;
+    private volatile long rowsBeforePrint;
+    private volatile long printStartNanos;
+    private long startNanos;
+    private long totalNanos;
+    private final AtomicLong peakHeap = new AtomicLong();
+
+    public RunStats() {
+        this(true, true);
+    }
+
+    /**
+     * @param timed if false, only counters are updated, and phases are not timed
+     */
+    public RunStats(boolean timed) {
+        this(true, timed);
+    }
+
+    private RunStats(boolean enabled, boolean timed) {
+        this.enabled = enabled;
+        this.timed = timed;
+        for (int i = 0; i < phaseNanos.length; ++i) {
+            phaseNanos[i] = new LongAdder();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isTimed() {
+        return timed;
+    }
+
+    /**
+     * Start of the run
+     */
+    public void begin() {
+        if (timed) {
+            startNanos = System.nanoTime();
+            sampleHeap();
+        }
+    }
+
+    /**
+     * End of the run
+     */
+    public void end() {
+        if (timed) {
+            totalNanos = System.nanoTime() - startNanos;
+            sampleHeap();
+        }
+    }
+
+    /**
+     * Update peak heap with current heap usage; called periodically while the run is in
+     * progress. Peak usage of memory pools is not used, as resetting it would affect
+     * whoever else relies on it in the same JVM.
+     */
+    public void sampleHeap() {
+        if (timed) {
+            long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            peakHeap.accumulateAndGet(used, Math::max);
+        }
+    }
+
+    /**
+     * @return start time to be passed to stop(), or 0 if not timed
+     */
+    public long start() {
+        return timed ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Add time elapsed since given start time to given phase
+     */
+    public void stop(Phase phase, long start) {
+        if (timed) {
+            phaseNanos[phase.ordinal()].add(System.nanoTime() - start);
+        }
+    }
+
+    public void addBytesRead(long n) {
+        if (enabled) {
+            bytesRead.add(n);
+        }
+    }
+
+    /**
+     * Count a record, i.e. the root node or an element of the root array, being flattened
+     */
+    public void addRecord() {
+        if (enabled) {
+            records.increment();
+        }
+    }
+
+    /**
+     * Count a row going to output
+     */
+    public void addRow() {
+        if (enabled) {
+            rows.increment();
+        }
+    }
+
+    public void addRows(long n) {
+        if (enabled) {
+            rows.add(n);
+        }
+    }
+
+    /**
+     * Input is fully read and given number of buffered rows is about to be printed: from
+     * now on, progress is measured in rows printed rather than in bytes read
+     */
+    public void beginPrint(long n) {
+        if (enabled) {
+            rowsBeforePrint = rows.sum();
+            printStartNanos = System.nanoTime();
+            rowsToPrint = n;
+        }
+    }
+
+    /**
+     * @return rows still to be printed after beginPrint(), or -1 if rows are printed while
+     *         input is read
+     */
+    public long getRowsToPrint() {
+        long n = rowsToPrint;
+        return n < 0 ? -1 : Math.max(0, n - getRowsPrinted());
+    }
+
+    /**
+     * @return rows printed since beginPrint()
+     */
+    public long getRowsPrinted() {
+        return rowsToPrint < 0 ? 0 : rows.sum() - rowsBeforePrint;
+    }
+
+    /**
+     * @return milliseconds elapsed since beginPrint()
+     */
+    public long getPrintMillis() {
+        return rowsToPrint < 0 ? 0 : (System.nanoTime() - printStartNanos) / 1000000;
+    }
+
+    public void setColumns(int columns) {
+        if (enabled) {
+            this.columns = columns;
+        }
+    }
+
+    /**
+     * @return given FULL JOIN iterator, measuring its time and counting its rows; the same
+     *         iterator if disabled
+     */
+    public <T> Iterator<T> join(Iterator<T> iterator) {
+        if (!enabled) {
+            return iterator;
+        }
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                long start = start();
+                boolean result = iterator.hasNext();
+                stop(Phase.JOIN, start);
+                return result;
+            }
+
+            @Override
+            public T next() {
+                long start = start();
+                T result = iterator.next();
+                stop(Phase.JOIN, start);
+                joinRows.increment();
+                return result;
+            }
+        };
+    }
+
+    public long getPhaseNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()].sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    public long getRecords() {
+        return records.sum();
+    }
+
+    public long getJoinRows() {
+        return joinRows.sum();
+    }
+
+    public long getRows() {
+        return rows.sum();
+    }
+
+    /**
+     * @return average number of rows generated by FULL JOIN from a single record
+     */
+    public double getJoinFactor() {
+        long n = getRecords();
+        return n == 0 ? 0 : (double) getJoinRows() / n;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return highest heap usage sampled during the run, in bytes
+     */
+    public long getPeakHeap() {
+        return peakHeap.get();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /**
+     * Print statistics in human readable form
+     */
+    public void print(PrintStream out) {
+        out.println("Statistics:");
+        for (Phase phase : Phase.values()) {
+            out.printf(Locale.ROOT, "  %-12s %12.1f ms%n", phase.getLabel(), millis(getPhaseNanos(phase)));
+        }
+        out.printf(Locale.ROOT, "  %-12s %12.1f ms%n", "total", millis(totalNanos));
+        out.printf(Locale.ROOT, "  %-12s %12d%n", "bytes read", getBytesRead());
+        out.printf(Locale.ROOT, "  %-12s %12d%n", "records", getRecords());
+        out.printf(Locale.ROOT, "  %-12s %12d%n", "join rows", getJoinRows());
+        out.printf(Locale.ROOT, "  %-12s %12.2f%n", "join factor", getJoinFactor());
+        out.printf(Locale.ROOT, "  %-12s %12d%n", "rows", getRows());
+        out.printf(Locale.ROOT, "  %-12s %12d%n", "columns", columns);
+        out.printf(Locale.ROOT, "  %-12s %12.1f MB%n", "peak heap", getPeakHeap() / 1048576.0);
+    }
+
+    /**
+     * Write statistics as a JSON object. Times are in milliseconds, sizes in bytes.
+     * Given stream is not closed.
+     */
+    public void writeJson(OutputStream out) throws IOException {
+        JsonObjectBuilder phases = Json.createObjectBuilder();
+        for (Phase phase : Phase.values()) {
+            phases.add(phase.getLabel(), millis(getPhaseNanos(phase)));
+        }
+        JsonObjectBuilder builder = Json.createObjectBuilder()
+                .add("phases", phases)
+                .add("total", millis(totalNanos))
+                .add("bytesRead", getBytesRead())
+                .add("records", getRecords())
+                .add("joinRows", getJoinRows())
+                .add("joinFactor", getJoinFactor())
+                .add("rows", getRows())
+                .add("columns", columns)
+                .add("peakHeap", getPeakHeap());
+        JsonWriter writer = Json.createWriterFactory(Map.of(JsonGenerator.PRETTY_PRINTING, true))
+                .createWriter(out);
+        writer.writeObject(builder.build());
+        out.flush();
+    }
+}
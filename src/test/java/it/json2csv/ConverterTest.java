@@ -1,25 +1,62 @@
 package it.json2csv;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
+import javax.management.MBeanServer;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.LineIterator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.ParameterException;
+
+import it.json2csv.Options.CompressionFormat;
+import it.json2csv.Options.Emitter;
+import it.json2csv.Options.HeaderDiscovery;
+import it.json2csv.Options.RowLimitPolicy;
+
 public class ConverterTest {
     
     String jsonFullFilename;
@@ -110,6 +147,40 @@ public class ConverterTest {
         assertEquals(null, fullJoin.get(0).get("somearray"));
     }
 
+    @Test
+    public void testFullJoinEmptyArrayFirst() throws FileNotFoundException, IOException {
+        LinkedHashMap<String, Object> map1 = new LinkedHashMap<>();
+        map1.put("emptyarray", new ArrayList<String>());
+        map1.put("somestring", "foo");
+        map1.put("somearray", List.of("a", "b"));
+        List<LinkedHashMap<String, Object>> fullJoin = converter.fullJoin(map1);
+        assertEquals(2, fullJoin.size());
+        assertEquals(List.of("somestring", "somearray"), new ArrayList<>(fullJoin.get(0).keySet()));
+        assertEquals("b", fullJoin.get(1).get("somearray"));
+    }
+
+    @Test
+    public void testFullJoinIteratorOrder() throws FileNotFoundException, IOException {
+        LinkedHashMap<String, Object> nested1 = new LinkedHashMap<>();
+        nested1.put("x", "1");
+        nested1.put("inner", List.of("p", "q"));
+        LinkedHashMap<String, Object> nested2 = new LinkedHashMap<>();
+        nested2.put("x", "2");
+        LinkedHashMap<String, Object> map1 = new LinkedHashMap<>();
+        map1.put("objects", List.of(nested1, nested2));
+        map1.put("somestring", "foo");
+        map1.put("array2", List.of("c", "d"));
+
+        Iterator<LinkedHashMap<String, Object>> it = converter.fullJoinIterator(map1);
+        List<String> rows = new ArrayList<>();
+        while (it.hasNext()) {
+            LinkedHashMap<String, Object> row = it.next();
+            rows.add(row.get("x") + "" + row.get("inner") + row.get("array2"));
+        }
+        // attributes of objects are appended, so array2 is joined before inner
+        assertEquals(List.of("1pc", "1qc", "1pd", "1qd", "2nullc", "2nulld"), rows);
+    }
+
     @Test
     public void testRead3() throws FileNotFoundException, IOException {
         setSample("sample3.json");
@@ -349,4 +420,916 @@ public class ConverterTest {
         assertFalse(it.hasNext());
     }
 
+
+    @Test
+    public void testStream() throws IOException {
+        File tempFile = File.createTempFile("temp-", ".csv");
+        tempFile.deleteOnExit();
+        File streamFile = File.createTempFile("temp-", ".csv");
+        streamFile.deleteOnExit();
+
+        setSample("sample-nested-array.json");
+        options.setRoot("data");
+        options.setOutput(tempFile.getAbsolutePath());
+        converter.run();
+
+        options.setStream(true);
+        options.setOutput(streamFile.getAbsolutePath());
+        new Converter(options).run();
+
+        assertTrue(streamFile.length() > 0);
+        assertEquals(FileUtils.readFileToString(tempFile, "utf-8"), FileUtils.readFileToString(streamFile, "utf-8"));
+    }
+
+    @Test
+    public void testStreamExclude() throws IOException {
+        File tempFile = File.createTempFile("temp-", ".csv");
+        tempFile.deleteOnExit();
+        
+        setSample("sample-nested-2.json");
+        options.setOutput(tempFile.getAbsolutePath());
+        options.setStream(true);
+        options.setRoot("data");
+        options.setExclude(List.of("0/surname", "*/value"));
+
+        converter.run();
+
+        LineIterator it = FileUtils.lineIterator(tempFile, "UTF-8");
+        assertEquals("name", it.nextLine());
+        assertEquals("foo", it.nextLine());
+        assertEquals("x", it.nextLine());
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void testStreamNewColumnsIgnored() throws IOException {
+        File tempFile = File.createTempFile("temp-", ".csv");
+        tempFile.deleteOnExit();
+        
+        setSample("sample-nested-2.json");
+        options.setOutput(tempFile.getAbsolutePath());
+        options.setStream(true);
+        options.setRoot("data");
+
+        converter.run();
+
+        // header is taken from first record
+        LineIterator it = FileUtils.lineIterator(tempFile, "UTF-8");
+        assertEquals("name,surname", it.nextLine());
+        assertEquals("foo,bar", it.nextLine());
+        assertEquals("x,", it.nextLine());
+        assertEquals("x,", it.nextLine());
+        assertEquals("x,", it.nextLine());
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void testStreamHeaderDiscovery() throws IOException {
+        File tempFile = File.createTempFile("temp-", ".csv");
+        tempFile.deleteOnExit();
+        File scanFile = File.createTempFile("temp-", ".csv");
+        scanFile.deleteOnExit();
+        File spillFile = File.createTempFile("temp-", ".csv");
+        spillFile.deleteOnExit();
+
+        setSample("sample-nested-2.json");
+        options.setRoot("data");
+        options.setOutput(tempFile.getAbsolutePath());
+        converter.run();
+
+        options.setStream(true);
+        options.setHeaderDiscovery(HeaderDiscovery.SCAN);
+        options.setOutput(scanFile.getAbsolutePath());
+        new Converter(options).run();
+
+        options.setHeaderDiscovery(HeaderDiscovery.SPILL);
+        options.setOutput(spillFile.getAbsolutePath());
+        new Converter(options).run();
+
+        String expected = FileUtils.readFileToString(tempFile, "utf-8");
+        assertTrue(expected.startsWith("name,surname,value"));
+        assertEquals(expected, FileUtils.readFileToString(scanFile, "utf-8"));
+        assertEquals(expected, FileUtils.readFileToString(spillFile, "utf-8"));
+    }
+
+    @Test
+    public void testThreads() throws IOException {
+        List<String> files = new ArrayList<>();
+        for (String sample : List.of("sample1.json", "sample2.json", "sample3.json", "sample4.json", "sample-nested-2.json")) {
+            files.add(Thread.currentThread().getContextClassLoader().getResource(sample).getPath());
+        }
+        files.add(2, "does-not-exist.json");
+        options.setFiles(files);
+
+        List<LinkedHashMap<String, Object>> expected = converter.readData();
+        assertEquals(1, converter.getRc());
+
+        // with 2 threads, there are more files than tasks submitted ahead
+        for (int threads : List.of(2, 4)) {
+            options.setThreads(threads);
+            Converter parallelConverter = new Converter(options);
+            List<LinkedHashMap<String, Object>> rows = parallelConverter.readData();
+            assertEquals(1, parallelConverter.getRc());
+            assertEquals(expected, rows);
+            // check that columns order is preserved too
+            for (int i = 0; i < rows.size(); ++i) {
+                assertEquals(new ArrayList<>(expected.get(i).keySet()), new ArrayList<>(rows.get(i).keySet()));
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidThreads() {
+        setSample("sample3.json");
+        final PrintStream standardErr = System.err;
+        try {
+            for (int threads : List.of(0, -2, Options.MAX_THREADS + 1)) {
+                ByteArrayOutputStream err = new ByteArrayOutputStream();
+                System.setErr(new PrintStream(err, true));
+                options.setThreads(threads);
+                Converter converter = new Converter(options);
+                converter.run();
+                assertEquals(-1, converter.getRc());
+                assertTrue(err.toString().contains("Invalid --threads " + threads), err.toString());
+
+                // rejected on the command line too
+                JCommander jCommander = JCommander.newBuilder().addObject(new Options()).build();
+                assertThrows(ParameterException.class, () -> jCommander.parse("--threads", String.valueOf(threads)));
+            }
+        } finally {
+            System.setErr(standardErr);
+        }
+        JCommander.newBuilder().addObject(new Options()).build().parse("--threads", String.valueOf(Options.MAX_THREADS));
+    }
+
+    @Test
+    public void testParallelFlattening() {
+        JsonArrayBuilder builder = Json.createArrayBuilder();
+        for (int i = 0; i < 5 * Converter.PARALLEL_CHUNK_SIZE + 7; ++i) {
+            JsonObjectBuilder element = Json.createObjectBuilder().add("id", i);
+            if (i % 3 == 0) {
+                element.add("tags", Json.createArrayBuilder().add("a" + i).add("b" + i));
+            }
+            if (i % 5 == 0) {
+                element.add("extra" + i, true);
+            }
+            builder.add(element);
+        }
+        JsonArray data = builder.build();
+
+        List<LinkedHashMap<String, Object>> expected = converter.json2list(data);
+
+        options.setThreads(4);
+        List<LinkedHashMap<String, Object>> rows = new Converter(options).json2list(data);
+        assertEquals(expected, rows);
+
+        List<String> expectedColumns = new ArrayList<>();
+        List<Object[]> expectedArrays = new ArrayList<>();
+        converter.arrangeData(expected, expectedColumns, expectedArrays);
+        List<String> columns = new ArrayList<>();
+        converter.arrangeData(rows, columns, new ArrayList<>());
+        assertEquals(expectedColumns, columns);
+    }
+
+    @Test
+    public void testEstimateRows() throws IOException {
+        setSample("sample3.json");
+        JsonValue data = new JsonUtil().jsonFromFile(jsonFullFilename);
+        LinkedHashMap<String, Object> map = converter.json2listNoJoin(data, "", 1);
+        assertEquals(4, converter.estimateRows(map));
+
+        setSample("sample4.json");
+        data = new JsonUtil().jsonFromFile(jsonFullFilename);
+        map = converter.json2listNoJoin(data, "", 1);
+        long estimate = converter.estimateRows(map);
+        assertEquals(3, estimate);
+        assertEquals(estimate, converter.fullJoin(map).size());
+    }
+
+    @Test
+    public void testMaxRowsPerRecord() throws IOException {
+        setSample("sample3.json");
+        options.setMaxRowsPerRecord(2L);
+
+        options.setRowLimitPolicy(RowLimitPolicy.TRUNCATE);
+        assertEquals(2, new Converter(options).readData().size());
+
+        options.setRowLimitPolicy(RowLimitPolicy.SKIP);
+        assertEquals(0, new Converter(options).readData().size());
+
+        options.setRowLimitPolicy(RowLimitPolicy.FAIL);
+        try {
+            new Converter(options).readData();
+            fail("Should give exception: too many rows");
+        } catch (RowLimitException e) {
+            // ok
+        }
+
+        File tempFile = File.createTempFile("temp-", ".csv");
+        tempFile.deleteOnExit();
+        options.setOutput(tempFile.getAbsolutePath());
+        converter.run();
+        assertEquals(3, converter.getRc());
+    }
+
+    @Test
+    public void testMaxTotalRows() throws IOException {
+        File tempFile = File.createTempFile("temp-", ".csv");
+        tempFile.deleteOnExit();
+
+        setSample("sample3.json");
+        options.setOutput(tempFile.getAbsolutePath());
+        options.setStream(true);
+        options.setMaxTotalRows(3L);
+        options.setRowLimitPolicy(RowLimitPolicy.TRUNCATE);
+
+        converter.run();
+
+        assertEquals(0, converter.getRc());
+        // header + 3 rows
+        assertEquals(4, FileUtils.readLines(tempFile, "UTF-8").size());
+    }
+
+    @Test
+    public void testSpillDeleted() throws IOException {
+        File tempFile = File.createTempFile("temp-", ".csv");
+        tempFile.deleteOnExit();
+        File tempDir = new File(System.getProperty("java.io.tmpdir"));
+        FilenameFilter spills = (dir, name) -> name.startsWith("json2csv-") && name.endsWith(".spill");
+        Set<String> before = Set.of(tempDir.list(spills));
+
+        setSample("sample3.json");
+        options.setOutput(tempFile.getAbsolutePath());
+        options.setStream(true);
+        options.setHeaderDiscovery(HeaderDiscovery.SPILL);
+        converter.run();
+        assertEquals(0, converter.getRc());
+        // temporary files are deleted as soon as spills are closed
+        assertEquals(before, Set.of(tempDir.list(spills)));
+    }
+
+    @Test
+    public void testMmapReadAtRun() throws IOException {
+        File tempFile = File.createTempFile("temp-", ".csv");
+        tempFile.deleteOnExit();
+        setSample("sample3.json");
+        options.setOutput(tempFile.getAbsolutePath());
+
+        // options changed after the Converter was created still apply
+        options.setMmap(true);
+        assertEquals(4, converter.readData().size());
+        assertTrue(converter.jsonUtil.isMemoryMapped());
+        options.setMmap(false);
+        converter.run();
+        assertEquals(0, converter.getRc());
+        assertFalse(converter.jsonUtil.isMemoryMapped());
+    }
+
+    @Test
+    public void testMaxTotalRowsStopsReading() throws IOException {
+        File tempFile = File.createTempFile("temp-", ".csv");
+        tempFile.deleteOnExit();
+
+        setSample("sample3.json");
+        // once the limit is hit, the missing file is never opened
+        options.setFiles(List.of(jsonFullFilename, jsonFullFilename + ".does-not-exist"));
+        options.setOutput(tempFile.getAbsolutePath());
+        options.setMaxTotalRows(2L);
+        options.setRowLimitPolicy(RowLimitPolicy.TRUNCATE);
+
+        for (boolean stream : List.of(false, true)) {
+            for (int threads : List.of(1, 2)) {
+                options.setStream(stream);
+                options.setThreads(threads);
+                Converter converter = new Converter(options);
+                converter.run();
+                assertEquals(0, converter.getRc(), "stream " + stream + ", threads " + threads);
+                // header + 2 rows
+                assertEquals(3, FileUtils.readLines(tempFile, "UTF-8").size());
+            }
+        }
+    }
+
+    @Test
+    public void testColumnNamesInterned() throws IOException {
+        setSample("sample-nested-array.json");
+        List<LinkedHashMap<String, Object>> rows = converter.readData();
+        assertEquals(2, rows.size());
+        List<String> keys0 = new ArrayList<>(rows.get(0).keySet());
+        List<String> keys1 = new ArrayList<>(rows.get(1).keySet());
+        assertEquals(List.of("data-name", "data-surname"), keys0);
+        for (int i = 0; i < keys0.size(); ++i) {
+            assertTrue(keys0.get(i) == keys1.get(i));
+        }
+    }
+
+    @Test
+    public void testLosslessNumbers() throws IOException {
+        File jsonFile = File.createTempFile("temp-", ".json");
+        jsonFile.deleteOnExit();
+        FileUtils.writeStringToFile(jsonFile,
+                "[{\"id\": 9007199254740993, \"big\": 12345678901234567890.123456789, \"n\": 200, \"x\": 1.50}]", "utf-8");
+        File tempFile = File.createTempFile("temp-", ".csv");
+        tempFile.deleteOnExit();
+
+        options.setFiles(List.of(jsonFile.getAbsolutePath()));
+        options.setOutput(tempFile.getAbsolutePath());
+        converter.run();
+        String expected = "id,big,n,x\r\n9007199254740993,12345678901234567890.123456789,200,1.50\r\n";
+        assertEquals(expected, FileUtils.readFileToString(tempFile, "utf-8"));
+
+        options.setStream(true);
+        options.setHeaderDiscovery(HeaderDiscovery.SPILL);
+        new Converter(options).run();
+        assertEquals(expected, FileUtils.readFileToString(tempFile, "utf-8"));
+
+        options.setStream(false);
+        options.setNumberFormatText("#,##0");
+        new Converter(options).run();
+        assertTrue(FileUtils.readFileToString(tempFile, "utf-8").contains("\"9,007,199,254,740,993\""));
+
+        // exponents are never printed in scientific notation
+        FileUtils.writeStringToFile(jsonFile, "[{\"b\":1.5e3,\"e\":1E2,\"a\":0.0000001,\"d\":-0.0,\"n\":2.5E-10}]", "utf-8");
+        expected = "b,e,a,d,n\r\n1500,100,0.0000001,0.0,0.00000000025\r\n";
+        options = new Options();
+        options.setFiles(List.of(jsonFile.getAbsolutePath()));
+        options.setOutput(tempFile.getAbsolutePath());
+        for (Emitter emitter : Emitter.values()) {
+            for (HeaderDiscovery headerDiscovery : List.of(HeaderDiscovery.FIRST, HeaderDiscovery.SPILL)) {
+                for (boolean stream : List.of(false, true)) {
+                    options.setEmitter(emitter);
+                    options.setHeaderDiscovery(headerDiscovery);
+                    options.setStream(stream);
+                    new Converter(options).run();
+                    assertEquals(expected, FileUtils.readFileToString(tempFile, "utf-8"),
+                            emitter + " " + headerDiscovery + " stream " + stream);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testJsonl() throws IOException {
+        File jsonlFile = File.createTempFile("temp-", ".jsonl");
+        jsonlFile.deleteOnExit();
+        StringBuilder sb = new StringBuilder();
+        JsonArrayBuilder builder = Json.createArrayBuilder();
+        for (int i = 0; i < 50; ++i) {
+            JsonObjectBuilder record = Json.createObjectBuilder().add("id", i).add("name", "n\u00e8" + i)
+                    .add("tags", Json.createArrayBuilder().add("a" + i).add("b" + i))
+                    .add("obj", Json.createObjectBuilder().add("x", i * 0.5));
+            if (i % 7 == 0) {
+                record.add("extra", true);
+            }
+            JsonValue value = record.build();
+            sb.append(value.toString()).append("\n\n");
+            builder.add(value);
+        }
+        FileUtils.writeStringToFile(jsonlFile, sb.toString(), "utf-8");
+        File jsonFile = File.createTempFile("temp-", ".json");
+        jsonFile.deleteOnExit();
+        FileUtils.writeStringToFile(jsonFile, Json.createObjectBuilder().add("result", builder).build().toString(), "utf-8");
+
+        File tempFile = File.createTempFile("temp-", ".csv");
+        tempFile.deleteOnExit();
+        options.setFiles(List.of(jsonFile.getAbsolutePath()));
+        options.setRoot("result");
+        options.setExclude(List.of("*/id"));
+        options.setOutput(tempFile.getAbsolutePath());
+        converter.run();
+        String expected = FileUtils.readFileToString(tempFile, "utf-8");
+        assertTrue(expected.length() > 0);
+
+        options.setRoot(null);
+        options.setJsonl(true);
+        options.setFiles(List.of(jsonlFile.getAbsolutePath()));
+        Converter jsonlConverter = new Converter(options);
+        jsonlConverter.run();
+        assertEquals(0, jsonlConverter.getRc());
+        assertEquals(expected, FileUtils.readFileToString(tempFile, "utf-8"));
+
+        options.setStream(true);
+        options.setHeaderDiscovery(HeaderDiscovery.SPILL);
+        new Converter(options).run();
+        assertEquals(expected, FileUtils.readFileToString(tempFile, "utf-8"));
+    }
+
+    @Test
+    public void testJsonlParseError() throws IOException {
+        File jsonlFile = File.createTempFile("temp-", ".jsonl");
+        jsonlFile.deleteOnExit();
+        FileUtils.writeStringToFile(jsonlFile, "{\"a\": 1}\n{\"a\": \n", "utf-8");
+        File tempFile = File.createTempFile("temp-", ".csv");
+        tempFile.deleteOnExit();
+
+        options.setJsonl(true);
+        options.setFiles(List.of(jsonlFile.getAbsolutePath()));
+        options.setOutput(tempFile.getAbsolutePath());
+        converter.run();
+        assertEquals(2, converter.getRc());
+    }
+
+    @Test
+    public void testJsonlThreads() throws IOException {
+        File jsonlFile = File.createTempFile("temp-", ".jsonl");
+        jsonlFile.deleteOnExit();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 60000; ++i) {
+            JsonObjectBuilder record = Json.createObjectBuilder().add("id", i).add("name", "n\u00e8 " + i)
+                    .add("tags", Json.createArrayBuilder().add("a" + i).add("b" + i));
+            if (i % 1000 == 999) {
+                // new columns appearing in later ranges
+                record.add("extra" + (i / 5000), i);
+            }
+            sb.append(record.build().toString()).append("\n");
+        }
+        FileUtils.writeStringToFile(jsonlFile, sb.toString(), "utf-8");
+        assertTrue(jsonlFile.length() > 2 * FileRange.MIN_RANGE_SIZE);
+
+        File tempFile = File.createTempFile("temp-", ".csv");
+        tempFile.deleteOnExit();
+        options.setJsonl(true);
+        options.setFiles(List.of(jsonlFile.getAbsolutePath()));
+        options.setOutput(tempFile.getAbsolutePath());
+
+        for (boolean stream : List.of(false, true)) {
+            for (HeaderDiscovery headerDiscovery : HeaderDiscovery.values()) {
+                options.setStream(stream);
+                options.setHeaderDiscovery(headerDiscovery);
+                options.setThreads(1);
+                new Converter(options).run();
+                String expected = FileUtils.readFileToString(tempFile, "utf-8");
+
+                options.setThreads(3);
+                Converter parallel = new Converter(options);
+                parallel.run();
+                assertEquals(0, parallel.getRc());
+                assertEquals(expected, FileUtils.readFileToString(tempFile, "utf-8"), stream + " " + headerDiscovery);
+            }
+        }
+
+        // records are counted from the beginning of the file
+        options.setExclude(List.of("40000"));
+        options.setThreads(1);
+        new Converter(options).run();
+        String expected = FileUtils.readFileToString(tempFile, "utf-8");
+        options.setThreads(3);
+        new Converter(options).run();
+        assertEquals(expected, FileUtils.readFileToString(tempFile, "utf-8"));
+        assertFalse(expected.contains("n\u00e8 40000,"));
+    }
+
+    @Test
+    public void testCompressedInput() throws IOException {
+        File tempFile = File.createTempFile("temp-", ".csv");
+        tempFile.deleteOnExit();
+        setSample("sample1.json");
+        options.setOutput(tempFile.getAbsolutePath());
+        new Converter(options).run();
+        String expected = FileUtils.readFileToString(tempFile, "utf-8");
+
+        byte[] json = FileUtils.readFileToByteArray(new File(jsonFullFilename));
+        File gzipFile = File.createTempFile("temp-", ".json.gz");
+        gzipFile.deleteOnExit();
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gzipFile))) {
+            out.write(json);
+        }
+        File zlibFile = File.createTempFile("temp-", ".json.z");
+        zlibFile.deleteOnExit();
+        try (OutputStream out = new DeflaterOutputStream(new FileOutputStream(zlibFile))) {
+            out.write(json);
+        }
+
+        for (File compressed : List.of(gzipFile, zlibFile)) {
+            options.setFiles(List.of(compressed.getAbsolutePath()));
+            for (boolean stream : List.of(false, true)) {
+                for (boolean mmap : List.of(false, true)) {
+                    options.setStream(stream);
+                    options.setMmap(mmap);
+                    Converter converter = new Converter(options);
+                    converter.run();
+                    assertEquals(0, converter.getRc());
+                    assertEquals(expected, FileUtils.readFileToString(tempFile, "utf-8"),
+                            compressed + " " + stream + " " + mmap);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCompressedOutput() throws IOException {
+        File jsonlFile = File.createTempFile("temp-", ".jsonl");
+        jsonlFile.deleteOnExit();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; ++i) {
+            sb.append(Json.createObjectBuilder().add("id", i).add("name", "n\u00e8 " + i)
+                    .add("tags", Json.createArrayBuilder().add("a" + i).add("b" + i)).build().toString())
+                    .append("\n");
+        }
+        FileUtils.writeStringToFile(jsonlFile, sb.toString(), "utf-8");
+
+        File tempFile = File.createTempFile("temp-", ".csv");
+        tempFile.deleteOnExit();
+        options.setJsonl(true);
+        options.setFiles(List.of(jsonlFile.getAbsolutePath()));
+        options.setOutput(tempFile.getAbsolutePath());
+        new Converter(options).run();
+        byte[] expected = FileUtils.readFileToByteArray(tempFile);
+        assertTrue(expected.length > 4 * ParallelDeflaterOutputStream.BLOCK_SIZE);
+
+        for (CompressionFormat format : List.of(CompressionFormat.GZIP, CompressionFormat.DEFLATE)) {
+            for (int threads : List.of(1, 3)) {
+                for (int level : List.of(-1, 0, 9)) {
+                    options.setCompress(format);
+                    options.setThreads(threads);
+                    options.setCompressionLevel(level);
+                    new Converter(options).run();
+                    String message = format + " " + threads + " " + level;
+                    try (InputStream in = new FileInputStream(tempFile)) {
+                        InputStream decompressed = format == CompressionFormat.GZIP ? new GZIPInputStream(in)
+                                : new InflaterInputStream(in);
+                        assertArrayEquals(expected, IOUtils.toByteArray(decompressed), message);
+                    }
+                    if (level == 9) {
+                        assertTrue(tempFile.length() < expected.length / 2, message);
+                    }
+                }
+            }
+        }
+
+        options.setCompressionLevel(10);
+        Converter converter = new Converter(options);
+        converter.run();
+        assertEquals(33, converter.getRc());
+    }
+
+    @Test
+    public void testStdin() throws IOException {
+        File tempFile = File.createTempFile("temp-", ".csv");
+        tempFile.deleteOnExit();
+        setSample("sample1.json");
+        options.setOutput(tempFile.getAbsolutePath());
+        options.setStream(true);
+        options.setHeaderDiscovery(HeaderDiscovery.SPILL);
+        new Converter(options).run();
+        String expected = FileUtils.readFileToString(tempFile, "utf-8");
+
+        byte[] json = FileUtils.readFileToByteArray(new File(jsonFullFilename));
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(gzip)) {
+            out.write(json);
+        }
+
+        final InputStream standardIn = System.in;
+        try {
+            for (byte[] input : List.of(json, gzip.toByteArray())) {
+                for (List<String> files : List.of(List.of("-"), List.<String>of())) {
+                    System.setIn(new ByteArrayInputStream(input));
+                    options = new Options();
+                    options.setOutput(tempFile.getAbsolutePath());
+                    options.setFiles(files);
+                    // SCAN would read stdin twice
+                    options.setHeaderDiscovery(HeaderDiscovery.SCAN);
+                    Converter converter = new Converter(options);
+                    converter.run();
+                    assertEquals(0, converter.getRc());
+                    // options are left as given, for later runs
+                    assertFalse(options.isStream());
+                    assertEquals(HeaderDiscovery.SCAN, options.getHeaderDiscovery());
+                    assertEquals(files, options.getFiles());
+                    assertEquals(expected, FileUtils.readFileToString(tempFile, "utf-8"));
+                }
+            }
+
+            // JSON Lines, not split into ranges
+            System.setIn(new ByteArrayInputStream("{\"a\":1}\n{\"a\":2,\"b\":3}\n".getBytes(StandardCharsets.UTF_8)));
+            options = new Options();
+            options.setOutput(tempFile.getAbsolutePath());
+            options.setJsonl(true);
+            options.setThreads(2);
+            options.setUnix(true);
+            options.setHeaderDiscovery(HeaderDiscovery.SPILL);
+            Converter converter = new Converter(options);
+            converter.run();
+            assertEquals(0, converter.getRc());
+            assertEquals("1 \n2 3\n", FileUtils.readFileToString(tempFile, "utf-8"));
+
+            // SPILL by default, so that columns are the same as for a file; FIRST with --stream
+            for (boolean stream : List.of(false, true)) {
+                System.setIn(new ByteArrayInputStream("[{\"a\":1},{\"a\":2,\"b\":3}]".getBytes(StandardCharsets.UTF_8)));
+                options = new Options();
+                options.setOutput(tempFile.getAbsolutePath());
+                options.setUnix(true);
+                options.setStream(stream);
+                converter = new Converter(options);
+                converter.run();
+                assertEquals(0, converter.getRc());
+                assertFalse(options.isHeaderDiscoveryGiven());
+                assertEquals(stream ? "1\n2\n" : "1 \n2 3\n", FileUtils.readFileToString(tempFile, "utf-8"));
+            }
+        } finally {
+            System.setIn(standardIn);
+        }
+    }
+
+    @Test
+    public void testStats() throws IOException {
+        File tempFile = File.createTempFile("temp-", ".csv");
+        tempFile.deleteOnExit();
+        File statsFile = File.createTempFile("temp-", ".json");
+        statsFile.deleteOnExit();
+        setSample("sample3.json");
+        options.setOutput(tempFile.getAbsolutePath());
+        options.setStatsFile(statsFile.getAbsolutePath());
+        List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans();
+        long[] peaks = new long[pools.size()];
+        for (int i = 0; i < peaks.length; ++i) {
+            peaks[i] = pools.get(i).isValid() ? pools.get(i).getPeakUsage().getUsed() : 0;
+        }
+
+        for (boolean stream : List.of(false, true)) {
+            options.setStream(stream);
+            converter.run();
+            assertEquals(0, converter.getRc());
+            JsonObject stats = Json.createReader(new StringReader(FileUtils.readFileToString(statsFile, "utf-8"))).readObject();
+            assertEquals(new File(jsonFullFilename).length(), stats.getJsonNumber("bytesRead").longValue());
+            assertEquals(1, stats.getInt("records"));
+            // ["goofy", "mickey"] x ["donald duck", "minnie"]
+            assertEquals(4, stats.getInt("joinRows"));
+            assertEquals(4.0, stats.getJsonNumber("joinFactor").doubleValue());
+            assertEquals(4, stats.getInt("rows"));
+            assertEquals(7, stats.getInt("columns"));
+            assertTrue(stats.getJsonNumber("peakHeap").longValue() > 0);
+            for (RunStats.Phase phase : RunStats.Phase.values()) {
+                assertTrue(stats.getJsonObject("phases").containsKey(phase.getLabel()));
+            }
+        }
+        // peak usage of memory pools belongs to the whole JVM, and is not reset
+        for (int i = 0; i < peaks.length; ++i) {
+            if (pools.get(i).isValid()) {
+                assertTrue(pools.get(i).getPeakUsage().getUsed() >= peaks[i], pools.get(i).getName());
+            }
+        }
+
+        // limits apply to printed rows only
+        options.setMaxTotalRows(3L);
+        options.setRowLimitPolicy(RowLimitPolicy.TRUNCATE);
+        converter.run();
+        JsonObject stats = Json.createReader(new StringReader(FileUtils.readFileToString(statsFile, "utf-8"))).readObject();
+        assertEquals(4, stats.getInt("joinRows"));
+        assertEquals(3, stats.getInt("rows"));
+
+        // disabled by default
+        assertFalse(RunStats.DISABLED.isEnabled());
+        assertEquals(0, RunStats.DISABLED.start());
+    }
+
+    @Test
+    public void testListener() throws Exception {
+        File tempFile = File.createTempFile("temp-", ".csv");
+        tempFile.deleteOnExit();
+        String file1 = Thread.currentThread().getContextClassLoader().getResource("sample1.json").getPath();
+        String file3 = Thread.currentThread().getContextClassLoader().getResource("sample3.json").getPath();
+        options.setFiles(List.of(file1, file3, file1 + ".does-not-exist"));
+        options.setOutput(tempFile.getAbsolutePath());
+
+        List<String> events = new ArrayList<>();
+        ConversionListener listener = new ConversionListener() {
+            @Override
+            public void started(ConversionProgress progress) {
+                events.add("started " + progress.getFilesTotal());
+            }
+
+            @Override
+            public void fileFinished(String fileName, ConversionProgress progress) {
+                events.add("file " + progress.getFilesDone());
+            }
+
+            @Override
+            public void finished(ConversionProgress progress) {
+                events.add("finished " + progress.getRc());
+            }
+        };
+        converter.addListener(listener);
+
+        for (int threads : List.of(1, 2)) {
+            for (boolean stream : List.of(false, true)) {
+                events.clear();
+                options.setThreads(threads);
+                options.setStream(stream);
+                converter.run();
+                assertEquals(List.of("started 3", "file 1", "file 2", "file 3", "finished 1"), events);
+                ConversionProgress progress = converter.getProgress();
+                assertFalse(progress.isRunning());
+                assertEquals(new File(file1).length() + new File(file3).length(), progress.getBytesTotal());
+                assertEquals(progress.getBytesTotal(), progress.getBytesRead());
+                assertEquals(2, progress.getRecords());
+                assertEquals(5, progress.getRowsWritten());
+                assertEquals(0, progress.getEtaMillis());
+            }
+        }
+        options.setThreads(1);
+
+        converter.removeListener(listener);
+        events.clear();
+        converter.run();
+        assertTrue(events.isEmpty());
+        assertEquals(0, converter.getProgress().getBytesRead());
+    }
+
+    @Test
+    public void testMonitor() throws Exception {
+        File tempFile = File.createTempFile("temp-", ".csv");
+        tempFile.deleteOnExit();
+        setSample("sample3.json");
+        options.setOutput(tempFile.getAbsolutePath());
+        options.setStream(true);
+        converter.setProgressInterval(1);
+
+        ConversionMonitor monitor = ConversionMonitor.register(converter, "test");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            assertEquals(0L, server.getAttribute(monitor.getObjectName(), "RowsWritten"));
+            converter.run();
+            assertEquals(1, server.getAttribute(monitor.getObjectName(), "FilesDone"));
+            assertEquals(4L, server.getAttribute(monitor.getObjectName(), "RowsWritten"));
+            assertEquals(new File(jsonFullFilename).length(), server.getAttribute(monitor.getObjectName(), "BytesRead"));
+            assertEquals(false, server.getAttribute(monitor.getObjectName(), "Running"));
+            assertEquals(0L, server.getAttribute(monitor.getObjectName(), "IdleMillis"));
+        } finally {
+            monitor.unregister();
+        }
+        assertFalse(server.isRegistered(monitor.getObjectName()));
+    }
+
+    @Test
+    public void testProgress() throws IOException {
+        File tempFile = File.createTempFile("temp-", ".csv");
+        tempFile.deleteOnExit();
+        setSample("sample3.json");
+        long size = new File(jsonFullFilename).length();
+        options.setOutput(tempFile.getAbsolutePath());
+        options.setProgress(true);
+
+        final PrintStream standardErr = System.err;
+        try {
+            for (boolean mmap : List.of(false, true)) {
+                ByteArrayOutputStream err = new ByteArrayOutputStream();
+                System.setErr(new PrintStream(err, true, "utf-8"));
+                options.setMmap(mmap);
+                Converter converter = new Converter(options);
+                converter.run();
+                assertEquals(0, converter.getRc());
+                // bytes are counted while reading, also when memory-mapped
+                assertEquals(size, converter.getProgress().getBytesRead());
+                String output = err.toString("utf-8");
+                assertTrue(output.contains("(100%), 1 records, 4 rows"), output);
+                assertTrue(output.contains(", done in 0:00:0"), output);
+                // the printer is registered for a single run
+                assertTrue(converter.listeners.isEmpty());
+            }
+        } finally {
+            System.setErr(standardErr);
+        }
+
+        assertEquals("1:01:01", ProgressPrinter.duration(3661000));
+        assertEquals("0:00:01", ProgressPrinter.duration(999));
+
+        // while buffered rows are printed, ETA is based on rows left
+        RunStats stats = new RunStats(false);
+        ConversionProgress printing = new ConversionProgress(List.of(jsonFullFilename), stats);
+        stats.addBytesRead(size);
+        stats.beginPrint(10);
+        assertEquals(-1, printing.getEtaMillis());
+        stats.addRows(5);
+        assertTrue(printing.getEtaMillis() >= 0);
+    }
+
+    @Test
+    public void testConvert() throws IOException {
+        File tempFile = File.createTempFile("temp-", ".csv");
+        tempFile.deleteOnExit();
+        setSample("sample3.json");
+        options.setOutput(tempFile.getAbsolutePath());
+        converter.run();
+        List<String> lines = FileUtils.readLines(tempFile, "utf-8");
+
+        // same header and rows as the command line, from a compressed stream
+        byte[] json = FileUtils.readFileToByteArray(new File(jsonFullFilename));
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(gzip)) {
+            out.write(json);
+        }
+        try (RowIterator rows = converter.convert(new ByteArrayInputStream(gzip.toByteArray()))) {
+            assertEquals(lines.get(0), String.join(",", rows.getColumns()));
+            int count = 0;
+            while (rows.hasNext()) {
+                Object[] row = rows.next();
+                assertEquals(rows.getColumns().size(), row.length);
+                ++count;
+            }
+            assertEquals(lines.size() - 1, count);
+        }
+
+        // JSON Lines: header from the first record, JSON null is empty, missing value is null
+        options = new Options();
+        options.setJsonl(true);
+        converter = new Converter(options);
+        String jsonl = "{\"id\":\"r0\",\"v\":[1,2],\"n\":null}\n{\"id\":\"r1\",\"v\":[3],\"x\":true}\n";
+        final PrintStream standardErr = System.err;
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(err, true, "utf-8"));
+        List<Object[]> rows = new ArrayList<>();
+        try (RowIterator it = converter.convert(new StringReader(jsonl))) {
+            assertEquals(List.of("id", "n", "v"), it.getColumns());
+            it.forEachRemaining(rows::add);
+        } finally {
+            System.setErr(standardErr);
+        }
+        assertEquals(3, rows.size());
+        assertEquals("r0", rows.get(0)[0]);
+        assertEquals("", rows.get(0)[1]);
+        assertEquals("1", rows.get(0)[2].toString());
+        assertEquals("r1", rows.get(2)[0]);
+        assertEquals(null, rows.get(2)[1]);
+        assertTrue(err.toString("utf-8").contains("Column x not found in first record"));
+
+        // --filter-columns and --max-total-rows apply
+        options.setOutputColumns(List.of("v", "id"));
+        options.setMaxTotalRows(2L);
+        options.setRowLimitPolicy(Options.RowLimitPolicy.TRUNCATE);
+        System.setErr(new PrintStream(new ByteArrayOutputStream(), true, "utf-8"));
+        try (RowIterator it = converter.convert(new StringReader(jsonl))) {
+            assertEquals(List.of("v", "id"), it.getColumns());
+            assertEquals(2, it.stream().count());
+        } finally {
+            System.setErr(standardErr);
+        }
+
+        // FAIL policy: hasNext() throws once the limit is exceeded
+        options.setRowLimitPolicy(RowLimitPolicy.FAIL);
+        try (RowIterator it = converter.convert(new StringReader(jsonl))) {
+            it.next();
+            it.next();
+            assertThrows(RowLimitException.class, () -> it.hasNext());
+        }
+
+        // each iterator keeps the transforms in effect when it was created
+        options = new Options();
+        options.setJsonl(true);
+        options.setExclude(List.of("*/n"));
+        converter = new Converter(options);
+        try (RowIterator first = converter.convert(new StringReader(jsonl))) {
+            assertEquals(List.of("id", "v"), first.getColumns());
+            options.setExclude(List.of("*/v"));
+            try (RowIterator second = converter.convert(new StringReader(jsonl))) {
+                assertEquals(List.of("id", "n"), second.getColumns());
+            }
+            rows.clear();
+            first.forEachRemaining(rows::add);
+            assertEquals(3, rows.size());
+            assertEquals("3", rows.get(2)[1].toString());
+        }
+    }
+
+    @Test
+    public void testConvertAfterRun() throws IOException {
+        File tempFile = File.createTempFile("temp-", ".csv");
+        tempFile.deleteOnExit();
+        File statsFile = File.createTempFile("temp-", ".json");
+        statsFile.deleteOnExit();
+        setSample("sample3.json");
+        options.setOutput(tempFile.getAbsolutePath());
+        options.setStatsFile(statsFile.getAbsolutePath());
+        converter.run();
+        ConversionProgress progress = converter.getProgress();
+        assertEquals(1, progress.getRecords());
+        assertEquals(4, progress.getRowsWritten());
+        long bytesRead = progress.getBytesRead();
+
+        // rows converted later are not counted in the last run
+        try (RowIterator rows = converter.convert(new FileInputStream(jsonFullFilename))) {
+            assertEquals(4, rows.stream().count());
+        }
+        assertEquals(1, progress.getRecords());
+        assertEquals(4, progress.getRowsWritten());
+        assertEquals(bytesRead, progress.getBytesRead());
+    }
+
+    @Test
+    public void testConvertLazy() throws IOException {
+        // endless root array: only what is consumed is ever read
+        InputStream endless = new InputStream() {
+            private final String record = "{\"id\":\"x\",\"v\":[1,2]},";
+            private long position = -1;
+
+            @Override
+            public int read() {
+                return position++ < 0 ? '[' : record.charAt((int) ((position - 1) % record.length()));
+            }
+        };
+        try (Stream<Object[]> rows = converter.convert(endless).stream()) {
+            assertEquals(1000, rows.limit(1000).filter(row -> "x".equals(row[0])).count());
+        }
+    }
 }
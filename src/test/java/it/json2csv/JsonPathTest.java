@@ -0,0 +1,47 @@
+package it.json2csv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class JsonPathTest {
+
+    @Test
+    public void testParse() {
+        assertEquals(List.of("aaa", "bbb", "2", "ccc"), JsonPath.parse("aaa/bbb/2/ccc").getSegments());
+        assertEquals(List.of("aaa", "bbb/2", "ccc"), JsonPath.parse("aaa/bbb//2/ccc").getSegments());
+        assertEquals(List.of("aaa", "2:cà\"@è::/", "ccc"),
+                JsonPath.parse("aaa/2:cà\"@è::///ccc").getSegments());
+        assertEquals(List.of("aaa", "bbb"), JsonPath.parse("aaa/bbb/").getSegments());
+        assertSame(JsonPath.EMPTY, JsonPath.parse(""));
+        assertSame(JsonPath.EMPTY, JsonPath.parse(null));
+        assertTrue(JsonPath.EMPTY.isEmpty());
+
+        assertEquals(JsonPath.parse("aaa/bbb"), JsonPath.parse("aaa/bbb/"));
+        assertEquals("aaa/bbb//2/ccc", JsonPath.parse("aaa/bbb//2/ccc").toString());
+    }
+
+    @Test
+    public void testSegments() {
+        JsonPath path = JsonPath.parse("data/*/12/name");
+        assertEquals(4, path.size());
+        assertFalse(path.isWildcard(0));
+        assertFalse(path.isIndex(0));
+        assertTrue(path.isWildcard(1));
+        assertFalse(path.isIndex(1));
+        assertTrue(path.isIndex(2));
+        assertEquals(12, path.index(2));
+
+        assertTrue(path.matchesIndex(1, 5));
+        assertTrue(path.matchesIndex(2, 12));
+        assertFalse(path.matchesIndex(2, 5));
+        assertThrows(NumberFormatException.class, () -> path.index(0));
+        assertThrows(NumberFormatException.class, () -> path.matchesIndex(3, 0));
+    }
+}
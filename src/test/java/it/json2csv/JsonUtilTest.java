@@ -6,10 +6,15 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.Reader;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Random;
 
 import javax.json.JsonArray;
 import javax.json.JsonNumber;
@@ -18,6 +23,8 @@ import javax.json.JsonString;
 import javax.json.JsonValue;
 import javax.json.JsonValue.ValueType;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.Test;
 
 public class JsonUtilTest {
@@ -198,4 +205,100 @@ public class JsonUtilTest {
         assertNotNull(((JsonObject)(data.get(2))).get("key"));
         assertEquals("\"donald\"", ((JsonObject)(data.get(2))).get("key").toString());
     }
+
+    @Test
+    public void testJsonFromFilePruned() throws IOException {
+        String fileName = getResourceFileName("sample-nested-2.json");
+        JsonValue full = util.jsonFromFile(fileName);
+
+        PathTransform transform = new PathTransform(PathTransformTest.paths(List.of("0/surname", "1/value/1")),
+                List.of(), util);
+        JsonValue pruned = util.jsonFromFile(fileName, JsonPath.parse("data"), new JsonPruner(transform, null));
+        // excluded member is never built, excluded element is a placeholder
+        assertEquals("[{\"name\":\"foo\"},{\"name\":\"x\",\"value\":[1,null,3]}]", pruned.toString());
+        assertEquals(transform.apply(util.getRoot(full, "data")), transform.apply(pruned));
+
+        // objects and arrays deeper than max depth are empty
+        pruned = util.jsonFromFile(fileName, JsonPath.EMPTY, new JsonPruner(null, 2));
+        assertEquals("{\"data\":[{},{}]}", pruned.toString());
+        pruned = util.jsonFromFile(fileName, JsonPath.parse("data"), new JsonPruner(null, 2));
+        assertEquals("[{\"name\":\"foo\",\"surname\":\"bar\"},{\"name\":\"x\",\"value\":[]}]", pruned.toString());
+
+        assertNull(util.jsonFromFile(fileName, JsonPath.parse("missing"), JsonPruner.NONE));
+        assertEquals(full, util.jsonFromFile(fileName, JsonPath.parse(""), JsonPruner.NONE));
+    }
+
+    @Test
+    public void testJsonFromFileMapped() throws FileNotFoundException, IOException {
+        String fileName = getResourceFileName("sample-nested-2.json");
+        JsonValue expected = util.jsonFromFile(fileName);
+        util.setMemoryMapped(true);
+        assertEquals(expected, util.jsonFromFile(fileName));
+        try {
+            util.jsonFromFile(fileName + ".does-not-exist");
+            fail("FileNotFoundException expected");
+        } catch (FileNotFoundException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testMappedUtf8Reader() throws IOException {
+        Random random = new Random(3);
+        String text = "ascii \u00e8\u00e9 \u20ac \ud834\udd1e \u4e2d\u6587 ";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int i = 0; i < 500; ++i) {
+            bytes.write(text.getBytes(StandardCharsets.UTF_8));
+            if (i % 10 == 0) {
+                // some malformed input
+                bytes.write(random.nextInt(256));
+            }
+        }
+        byte[] content = bytes.toByteArray();
+        File file = File.createTempFile("temp-", ".json");
+        file.deleteOnExit();
+        FileUtils.writeByteArrayToFile(file, content);
+        String expected = new String(content, StandardCharsets.UTF_8);
+
+        for (int windowSize : List.of(4, 7, 1000, MappedUtf8Reader.DEFAULT_WINDOW_SIZE)) {
+            for (int bufferSize : List.of(1, 3, 8192)) {
+                StringBuilder sb = new StringBuilder();
+                try (MappedUtf8Reader reader = new MappedUtf8Reader(file.getAbsolutePath(), windowSize)) {
+                    char[] cbuf = new char[bufferSize];
+                    int n;
+                    while ((n = reader.read(cbuf, 0, bufferSize)) >= 0) {
+                        sb.append(cbuf, 0, n);
+                    }
+                }
+                assertEquals(expected, sb.toString(), "window " + windowSize + " buffer " + bufferSize);
+            }
+        }
+    }
+
+    @Test
+    public void testFileRangeSplit() throws IOException {
+        File file = File.createTempFile("temp-", ".jsonl");
+        file.deleteOnExit();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; ++i) {
+            sb.append("{\"id\": ").append(i).append(", \"text\": \"\u00e8\u20ac").append("x".repeat(i % 13)).append("\"}\n");
+        }
+        String content = sb.toString();
+        FileUtils.writeStringToFile(file, content, StandardCharsets.UTF_8);
+
+        for (int parts : List.of(1, 2, 7, 1000)) {
+            List<FileRange> ranges = FileRange.split(file.getAbsolutePath(), parts, 10);
+            assertTrue(ranges.size() <= parts);
+            StringBuilder joined = new StringBuilder();
+            for (FileRange range : ranges) {
+                try (Reader reader = range.createReader()) {
+                    String text = IOUtils.toString(reader);
+                    assertTrue(text.isEmpty() || text.endsWith("\n"), range.toString());
+                    joined.append(text);
+                }
+            }
+            assertEquals(content, joined.toString(), "parts " + parts);
+        }
+        assertEquals(1, FileRange.split(file.getAbsolutePath(), 8).size());
+    }
 }
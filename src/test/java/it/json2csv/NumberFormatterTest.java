@@ -0,0 +1,101 @@
+package it.json2csv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+public class NumberFormatterTest {
+
+    static final String[] PATTERNS = { "0", "0.00", "#,##0.###", "0,000,000.000", "#.##", "000.0#", "#,##0", "0.############" };
+
+    static final Locale[] LOCALES = { Locale.US, Locale.ITALY, Locale.GERMANY, Locale.FRANCE, new Locale("de", "CH") };
+
+    private List<Number> sampleNumbers() {
+        List<Number> numbers = new ArrayList<>(List.of(0, -0.0, 0.0, 1, -1, 0.5, 1.5, 2.5, -2.5, 0.125, 1.005, 0.15,
+                1234.5678, -1234.5678, 1e20, 1.5e-10, -0.001, 123456789012345L, Long.MIN_VALUE, Long.MAX_VALUE,
+                0.1f, 1e300, Double.MIN_VALUE, Double.MAX_VALUE, Double.NaN, Double.POSITIVE_INFINITY,
+                new BigDecimal("12345678901234567890.123456789"), new BigDecimal("-0.0005"), new BigDecimal("1E+3"),
+                new BigDecimal("0.000"), new BigInteger("123456789012345678901234567890")));
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; ++i) {
+            numbers.add((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(16) - 4));
+            numbers.add(Math.round(random.nextDouble() * 100000) / 1000.0);
+            numbers.add(random.nextLong() >> random.nextInt(64));
+        }
+        return numbers;
+    }
+
+    @Test
+    public void testSameAsDecimalFormat() {
+        List<NumberFormat> formats = new ArrayList<>();
+        for (String pattern : PATTERNS) {
+            formats.add(new DecimalFormat(pattern));
+        }
+        for (Locale locale : LOCALES) {
+            formats.add(NumberFormat.getInstance(locale));
+        }
+        List<Number> numbers = sampleNumbers();
+        for (NumberFormat nf : formats) {
+            NumberFormatter formatter = new NumberFormatter(nf);
+            assertTrue(formatter.isFastPath());
+            for (Number x : numbers) {
+                assertEquals(nf.format(x), formatter.format(x), "Formatting " + x + " with " + ((DecimalFormat) nf).toPattern());
+            }
+        }
+    }
+
+    @Test
+    public void testFallback() {
+        NumberFormat nf = new DecimalFormat("0.00E0");
+        NumberFormatter formatter = new NumberFormatter(nf);
+        assertFalse(formatter.isFastPath());
+        assertEquals(nf.format(1234.5), formatter.format(1234.5));
+        nf = NumberFormat.getPercentInstance(Locale.US);
+        formatter = new NumberFormatter(nf);
+        assertEquals("50%", formatter.format(0.5));
+    }
+
+    @Test
+    public void testThreadSafe() throws Exception {
+        // percent format is not handled by the fast path, so each thread uses its own NumberFormat
+        NumberFormat nf = NumberFormat.getPercentInstance(Locale.US);
+        NumberFormatter formatter = new NumberFormatter(nf);
+        List<Number> numbers = sampleNumbers();
+        List<String> expected = new ArrayList<>();
+        for (Number x : numbers) {
+            expected.add(nf.format(x));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; ++t) {
+                futures.add(executor.submit(() -> {
+                    List<String> result = new ArrayList<>();
+                    for (Number x : numbers) {
+                        result.add(formatter.format(x));
+                    }
+                    return result;
+                }));
+            }
+            for (Future<List<String>> future : futures) {
+                assertEquals(expected, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
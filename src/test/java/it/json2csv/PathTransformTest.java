@@ -0,0 +1,115 @@
+package it.json2csv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+import org.junit.jupiter.api.Test;
+
+public class PathTransformTest {
+
+    static final String DOC = "{\"data\":["
+            + "{\"a\":{\"x\":1,\"y\":{\"p\":1,\"q\":2}},\"b\":2},"
+            + "{\"a\":{\"x\":3,\"y\":{\"p\":3}},\"b\":4},"
+            + "{\"a\":{\"x\":5,\"y\":{}},\"b\":6}],"
+            + "\"meta\":{\"k\":{\"v\":1},\"j\":{\"v\":2}}}";
+
+    JsonUtil util = new JsonUtil();
+
+    JsonValue parse(String json) {
+        return Json.createReader(new StringReader(json)).readValue();
+    }
+
+    PathTransform transform(List<String> exclude, List<String> oaa) {
+        return new PathTransform(paths(exclude), paths(oaa), util);
+    }
+
+    static List<JsonPath> paths(List<String> paths) {
+        return paths.stream().map(JsonPath::parse).collect(Collectors.toList());
+    }
+
+    /**
+     * Same transformation, one path at a time
+     */
+    JsonValue sequential(JsonValue value, List<String> exclude, List<String> oaa) {
+        for (String path : exclude) {
+            value = util.removeNode(value, path);
+        }
+        for (String path : oaa) {
+            value = util.oaa(value, path, PathTransform.NAME_KEY, PathTransform.VALUE_KEY);
+        }
+        return value;
+    }
+
+    void assertSameAsSequential(List<String> exclude, List<String> oaa) {
+        JsonValue value = parse(DOC);
+        PathTransform transform = transform(exclude, oaa);
+        assertEquals(sequential(value, exclude, oaa), transform.apply(value), exclude + " " + oaa);
+    }
+
+    @Test
+    public void testSameAsSequential() {
+        assertSameAsSequential(List.of(), List.of());
+        assertSameAsSequential(List.of("data/*/b", "data/1/a/x", "meta/k"), List.of());
+        assertSameAsSequential(List.of("data/*/a/x"), List.of("data/2/a"));
+        assertSameAsSequential(List.of("data/2/a/y/p"), List.of("data/*/a/y", "data/*/a"));
+        assertSameAsSequential(List.of("data/0", "meta/missing"), List.of("meta/k"));
+        // second path refers to the converted structure
+        assertSameAsSequential(List.of(), List.of("meta", "meta/0"));
+        assertSameAsSequential(List.of("data"), List.of("data/*/a"));
+    }
+
+    @Test
+    public void testUntouchedSubtreesShared() {
+        JsonObject value = (JsonObject) parse(DOC);
+        JsonObject result = (JsonObject) transform(List.of("data/*/b"), List.of()).apply(value);
+        assertSame(value.get("meta"), result.get("meta"));
+        result = (JsonObject) transform(List.of("data/0/b", "nothing"), List.of()).apply(value);
+        assertSame(((JsonArray) value.get("data")).get(1), ((JsonArray) result.get("data")).get(1));
+        assertSame(value, transform(List.of("nothing"), List.of()).apply(value));
+    }
+
+    @Test
+    public void testApplyToElement() {
+        JsonArray data = ((JsonObject) parse(DOC)).getJsonArray("data");
+        List<String> exclude = List.of("1", "*/a/x", "2/b");
+        List<String> oaa = List.of("*/a/y", "0/a");
+        PathTransform transform = transform(exclude, oaa);
+
+        JsonArrayBuilder elements = Json.createArrayBuilder();
+        for (int i = 0; i < data.size(); ++i) {
+            JsonValue element = transform.applyToElement(data.get(i), i);
+            if (element != null) {
+                elements.add(element);
+            }
+        }
+        JsonArray result = elements.build();
+        // indexes always refer to the input, also after an element is excluded
+        assertEquals(transform.apply(data), result);
+        assertEquals(2, result.size());
+        assertEquals(sequential(data, List.of("2/b", "1", "*/a/x"), oaa), result);
+        assertNull(transform.applyToElement(data.get(1), 1));
+    }
+
+    @Test
+    public void testErrors() {
+        JsonValue value = parse(DOC);
+        assertThrows(NumberFormatException.class,
+                () -> transform(List.of("data/x"), List.of()).apply(value));
+        assertThrows(IllegalArgumentException.class,
+                () -> transform(List.of("data/0/b/c"), List.of()).apply(value));
+        assertThrows(IllegalArgumentException.class,
+                () -> transform(List.of(), List.of("data/0/b")).apply(value));
+    }
+}
@@ -1,18 +1,29 @@
 package it.json2csv;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import it.json2csv.Options.Emitter;
+
 public class PrinterTest {
 
     Options options;
@@ -112,4 +123,217 @@ public class PrinterTest {
         assertTrue(fileContent.contains("a,1,c"));
         assertTrue(fileContent.contains("\"A,B\",2,C")); // MINIMAL quote mode
     }
+
+    @Test
+    public void testPrintCSVRowBuffer() throws IOException {
+        File tempFile = File.createTempFile("temp-", ".csv");
+        tempFile.deleteOnExit();
+
+        options.setOutput(tempFile.getAbsolutePath());
+
+        List<String> headers = List.of("first", "second", "third", "fourth");
+
+        RowBuffer buffer = new RowBuffer(options.getNumberFormatter());
+        String shared = "A,B";
+        buffer.addRow(new Object[]{ "a", 1.0, true, null });
+        buffer.addRow(new Object[]{ shared, null, false });
+        buffer.addRow(new Object[]{ shared, 2.5 });
+        assertEquals(3, buffer.size());
+        assertEquals(3, buffer.width(0));
+        assertEquals(RowBuffer.NULL, buffer.type(0, 3));
+        assertEquals(RowBuffer.NUMBER, buffer.type(2, 1));
+        assertEquals(2.5, buffer.number(2, 1));
+        assertSame(buffer.object(1, 0), buffer.object(2, 0));
+
+        printer.printCSV(buffer, headers);
+
+        String fileContent = FileUtils.readFileToString(tempFile, "utf-8");
+        assertEquals("first,second,third,fourth\r\na,1.0,true,\r\n\"A,B\",,false,\r\n\"A,B\",2.5,,\r\n", fileContent);
+    }
+
+    @Test
+    public void testOutputWriterCharsets() throws IOException {
+        String text = "plain ascii, \u00e8\u00e9 latin, \u20ac euro, \ud834\udd1e clef, \u4e2d\u6587";
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50; ++i) {
+            sb.append(text).append(i);
+        }
+        String longText = sb.toString();
+        for (String charsetName : List.of("UTF-8", "ISO-8859-1", "US-ASCII", "windows-1252", "UTF-16")) {
+            Charset charset = Charset.forName(charsetName);
+            for (int bufferSize : List.of(1, 17, OutputWriter.DEFAULT_BUFFER_SIZE)) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try (OutputWriter writer = new OutputWriter(out, charset, bufferSize)) {
+                    writer.append(longText, 0, 10);
+                    writer.write(longText, 10, 20);
+                    writer.write(longText.substring(30).toCharArray());
+                }
+                assertEquals(new String(longText.getBytes(charset), charset), new String(out.toByteArray(), charset),
+                        charsetName + " " + bufferSize);
+            }
+        }
+    }
+
+    @Test
+    public void testPrintCSVCharset() throws IOException {
+        File tempFile = File.createTempFile("temp-", ".csv");
+        tempFile.deleteOnExit();
+
+        options.setOutput(tempFile.getAbsolutePath());
+        options.setCharset("ISO-8859-1");
+        options.setBufferSize(16);
+
+        List<Object[]> data = new ArrayList<>();
+        data.add(new Object[]{ "caff\u00e8", "na\u00efve" });
+        printer.printCSV(data, List.of("first", "second"));
+
+        assertEquals("first,second\r\ncaff\u00e8,na\u00efve\r\n", FileUtils.readFileToString(tempFile, "ISO-8859-1"));
+    }
+
+    @Test
+    public void testPrintCSVStdoutNotClosed() throws IOException {
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(out, false, "UTF-8"));
+            List<Object[]> data = new ArrayList<>();
+            data.add(new Object[]{ "a", "b" });
+            printer.printCSV(data, List.of("first", "second"));
+            System.out.print("still open");
+            System.out.flush();
+        } finally {
+            System.setOut(stdout);
+        }
+        assertEquals("first,second\r\na,b\r\nstill open", out.toString("UTF-8"));
+    }
+
+    @Test
+    public void testEmitterSameAsCommons() throws IOException {
+        Random random = new Random(1);
+        String alphabet = "ab,;|\"'\\\r\n #!\t-0123456789\u00e8\u20ac";
+        List<Object[]> data = new ArrayList<>();
+        for (int r = 0; r < 300; ++r) {
+            Object[] row = new Object[5];
+            for (int c = 0; c < row.length; ++c) {
+                switch (random.nextInt(9)) {
+                    case 0:
+                        row[c] = null;
+                        break;
+                    case 1:
+                        row[c] = "";
+                        break;
+                    case 2:
+                        row[c] = random.nextBoolean();
+                        break;
+                    case 3:
+                        row[c] = random.nextLong() >> random.nextInt(64);
+                        break;
+                    case 4:
+                        row[c] = random.nextDouble() * 1000 - 500;
+                        break;
+                    case 5:
+                        row[c] = new BigDecimal("-12345678901234567890.5");
+                        break;
+                    default:
+                        StringBuilder sb = new StringBuilder();
+                        int len = random.nextInt(6);
+                        for (int i = 0; i < len; ++i) {
+                            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                        }
+                        row[c] = sb.toString();
+                }
+            }
+            data.add(row);
+        }
+        List<String> headers = List.of("#a", "b c", "c,d", "", "e");
+
+        for (String delimiter : List.of(",", ";", "||", " ", "1")) {
+            for (Character quote : Arrays.asList('"', '\'', null)) {
+                for (Character escape : Arrays.asList('"', '\\', null)) {
+                    for (String numberFormat : Arrays.asList(null, "#,##0.00")) {
+                        options = new Options();
+                        options.setFieldDelimiter(delimiter);
+                        options.setQuote(quote);
+                        options.setEscape(escape);
+                        options.setNumberFormatText(numberFormat);
+                        String description = delimiter + " " + quote + " " + escape + " " + numberFormat;
+
+                        RowBuffer buffer = new RowBuffer(options.getNumberFormatter());
+                        for (Object[] row : data) {
+                            buffer.addRow(row);
+                        }
+                        options.setEmitter(Emitter.COMMONS);
+                        String expected = printToString(buffer, headers);
+                        options.setEmitter(Emitter.FAST);
+                        assertEquals(expected, printToString(buffer, headers), description);
+                    }
+                }
+            }
+        }
+    }
+
+    private String printToString(RowBuffer buffer, List<String> headers) throws IOException {
+        File tempFile = File.createTempFile("temp-", ".csv");
+        tempFile.deleteOnExit();
+        options.setOutput(tempFile.getAbsolutePath());
+        new Printer(options).printCSV(buffer, headers);
+        return FileUtils.readFileToString(tempFile, "utf-8");
+    }
+
+    @Test
+    public void testEmitterRows() throws IOException {
+        options.setEmitter(Emitter.FAST);
+        options.setNumberFormatText("0.0");
+        String shared = "x,y";
+        List<Object[]> data = new ArrayList<>();
+        data.add(new Object[]{ "", shared, 12L, true, null });
+        data.add(new Object[]{ null, shared, new NumberWrapper(2.25, options.getNumberFormatter()), false, "#" });
+        data.add(new Object[]{ "a\"b", "", -1, " ", "c" });
+
+        options.setEmitter(Emitter.COMMONS);
+        String expected = printRowsToString(data);
+        options.setEmitter(Emitter.FAST);
+        String actual = printRowsToString(data);
+        assertEquals(expected, actual);
+        assertEquals("h1,h2,h3,h4,h5\r\n\"\",\"x,y\",12,true,\r\n,\"x,y\",2.2,false,\"#\"\r\n\"a\"\"b\",,-1,\" \",c\r\n", actual);
+    }
+
+    private String printRowsToString(List<Object[]> data) throws IOException {
+        File tempFile = File.createTempFile("temp-", ".csv");
+        tempFile.deleteOnExit();
+        options.setOutput(tempFile.getAbsolutePath());
+        try (Printer printer = new Printer(options)) {
+            printer.printHeader(List.of("h1", "h2", "h3", "h4", "h5"));
+            for (Object[] row : data) {
+                printer.printRow(row);
+            }
+        }
+        return FileUtils.readFileToString(tempFile, "utf-8");
+    }
+
+    @Test
+    public void testRowsCountedWhilePrinting() throws IOException {
+        File tempFile = File.createTempFile("temp-", ".csv");
+        tempFile.deleteOnExit();
+        options.setOutput(tempFile.getAbsolutePath());
+        RunStats stats = new RunStats(false);
+        printer.setStats(stats);
+        List<Object[]> rows = new AbstractList<Object[]>() {
+            @Override
+            public Object[] get(int index) {
+                // rows before this one are already counted
+                assertEquals(index, stats.getRowsPrinted());
+                assertEquals(size() - index, stats.getRowsToPrint());
+                return new Object[] {"row" + index};
+            }
+
+            @Override
+            public int size() {
+                return 3;
+            }
+        };
+        printer.printCSV(rows, List.of("name"));
+        assertEquals(3, stats.getRows());
+        assertEquals(0, stats.getRowsToPrint());
+    }
 }